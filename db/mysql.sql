@@ -12,4 +12,16 @@ create table sequence
 -- test data
 insert into sequence(`name`, `value`, `gmt_modified`, `step`)
 values ('tddl_test_seq',  10000000, now(), 10000),
-       ('tddl_test_seq1', 50000000, now(), 10000);
\ No newline at end of file
+       ('tddl_test_seq1', 50000000, now(), 10000);
+
+-- snowflake workerId 租约, 每个 workerId 一行, 租用时自动插入
+drop table if exists sequence_worker;
+create table sequence_worker
+(
+    `worker_id`      int comment 'workerId, 0 ~ 1023',
+    `owner`          varchar(255) comment '持有者, 主机名:pid:随机串',
+    `expire_at`      bigint comment '租约到期时间, 毫秒时间戳',
+    `last_timestamp` bigint default 0 comment '最后发号时间, 毫秒时间戳, 接手时等本地时钟超过该值',
+    `gmt_modified`   timestamp comment '最后更新时间',
+    primary key (`worker_id`)
+) comment = 'snowflake workerId 租约';
\ No newline at end of file
@@ -0,0 +1,38 @@
+-- create table
+drop table if exists sequence;
+create table sequence
+(
+    name         varchar(255) not null,
+    value        bigint,
+    gmt_modified timestamp,
+    step         int,
+    primary key (name)
+);
+comment on table sequence is '序列名';
+comment on column sequence.name is '序列名';
+comment on column sequence.value is '序列值';
+comment on column sequence.gmt_modified is '最后更新时间';
+comment on column sequence.step is '步长';
+
+-- test data
+insert into sequence(name, value, gmt_modified, step)
+values ('tddl_test_seq',  10000000, now(), 10000),
+       ('tddl_test_seq1', 50000000, now(), 10000);
+
+-- snowflake workerId 租约, 每个 workerId 一行, 租用时自动插入
+drop table if exists sequence_worker;
+create table sequence_worker
+(
+    worker_id      int not null,
+    owner          varchar(255),
+    expire_at      bigint,
+    last_timestamp bigint default 0,
+    gmt_modified   timestamp,
+    primary key (worker_id)
+);
+comment on table sequence_worker is 'snowflake workerId 租约';
+comment on column sequence_worker.worker_id is 'workerId, 0 ~ 1023';
+comment on column sequence_worker.owner is '持有者, 主机名:pid:随机串';
+comment on column sequence_worker.expire_at is '租约到期时间, 毫秒时间戳';
+comment on column sequence_worker.last_timestamp is '最后发号时间, 毫秒时间戳, 接手时等本地时钟超过该值';
+comment on column sequence_worker.gmt_modified is '最后更新时间';
@@ -1,9 +1,12 @@
 package com.yulaiz.tddl.sequence;
 
+import com.yulaiz.tddl.sequence.service.impl.GroupSequenceProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
+@EnableConfigurationProperties(GroupSequenceProperties.class)
 public class TddlSequenceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,16 @@
+package com.yulaiz.tddl.sequence.exception;
+
+import java.io.Serial;
+
+/**
+ * 序列不存在, 属于调用方的错误, 不计为数据库故障
+ */
+public class SequenceNotFoundException extends SequenceException {
+
+    @Serial
+    private static final long serialVersionUID = 4136629470719207536L;
+
+    public SequenceNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.yulaiz.tddl.sequence.exception;
+
+import java.io.Serial;
+
+/**
+ * 乐观更新冲突, 重试次数用尽, 计为数据库故障
+ */
+public class SequenceRetryExhaustedException extends SequenceUnavailableException {
+
+    @Serial
+    private static final long serialVersionUID = -2930586213875940147L;
+
+    public SequenceRetryExhaustedException(int retryTimes) {
+        super("Retried too many times, retryTimes = " + retryTimes);
+    }
+}
@@ -0,0 +1,24 @@
+package com.yulaiz.tddl.sequence.exception;
+
+import java.io.Serial;
+
+/**
+ * 数据库或本地存储暂时不可用, 计为故障, 可以熔断或改用预留区间
+ */
+public class SequenceUnavailableException extends SequenceException {
+
+    @Serial
+    private static final long serialVersionUID = 7395158260617741582L;
+
+    public SequenceUnavailableException(String message) {
+        super(message);
+    }
+
+    public SequenceUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public SequenceUnavailableException(Throwable cause) {
+        super(cause);
+    }
+}
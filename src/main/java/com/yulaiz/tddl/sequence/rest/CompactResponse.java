@@ -0,0 +1,152 @@
+package com.yulaiz.tddl.sequence.rest;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 不经过 Jackson 的紧凑响应
+ * <p>
+ * 按 Accept 中的 q 值和具体程度选择格式, 同等时优先 JSON, 都不匹配或无法解析时使用 JSON:
+ * <ul>
+ * <li>text/plain: 十进制文本, 多个值以换行分隔</li>
+ * <li>application/octet-stream: 单个值为 8 字节大端; 多个值为 varint 个数 + zigzag varint 编码的首个值和相邻差值</li>
+ * </ul>
+ * 失败时返回 4xx/5xx 状态码, 响应体为 UTF-8 文本的错误信息
+ */
+final class CompactResponse {
+    static final String TEXT_PLAIN = "text/plain";
+    static final String OCTET_STREAM = "application/octet-stream";
+
+    enum Format {
+        JSON, TEXT, BINARY
+    }
+
+    private CompactResponse() {
+    }
+
+    static Format negotiate(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return Format.JSON;
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+            // 先按具体程度排序, 再按 q 值稳定排序, q 值相同时更具体的类型在前
+            MimeTypeUtils.sortBySpecificity(mediaTypes);
+        } catch (InvalidMediaTypeException | InvalidMimeTypeException e) {
+            return Format.JSON;
+        }
+        mediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.getQualityValue() <= 0) {
+                break;
+            }
+            if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                return Format.JSON;
+            }
+            if (mediaType.includes(MediaType.TEXT_PLAIN)) {
+                return Format.TEXT;
+            }
+            if (mediaType.includes(MediaType.APPLICATION_OCTET_STREAM)) {
+                return Format.BINARY;
+            }
+        }
+        return Format.JSON;
+    }
+
+    static void writeValue(HttpServletResponse response, Format format, long value) throws IOException {
+        // 十进制最多 20 字节
+        byte[] buffer = new byte[20];
+        int length;
+        if (format == Format.BINARY) {
+            for (int i = 0; i < 8; i++) {
+                buffer[i] = (byte) (value >>> (56 - 8 * i));
+            }
+            length = 8;
+        } else {
+            length = putDecimal(buffer, 0, value);
+        }
+        write(response, format, buffer, length);
+    }
+
+    static void writeValues(HttpServletResponse response, Format format, long[] values) throws IOException {
+        // varint 最多 10 字节, 十进制最多 20 字节加分隔符
+        int maxLength = format == Format.BINARY ? 5 + 10 * values.length : 21 * values.length;
+        byte[] buffer = new byte[maxLength];
+        int length = 0;
+        if (format == Format.BINARY) {
+            length = putVarint(buffer, length, values.length);
+            long previous = 0;
+            for (long value : values) {
+                length = putVarint(buffer, length, zigzag(value - previous));
+                previous = value;
+            }
+        } else {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    buffer[length++] = '\n';
+                }
+                length = putDecimal(buffer, length, values[i]);
+            }
+        }
+        write(response, format, buffer, length);
+    }
+
+    static void writeError(HttpServletResponse response, int status, String message) throws IOException {
+        byte[] bytes = (message == null ? "" : message).getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status);
+        response.setContentType(TEXT_PLAIN + ";charset=UTF-8");
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    private static void write(HttpServletResponse response, Format format, byte[] buffer, int length)
+            throws IOException {
+        response.setContentType(format == Format.BINARY ? OCTET_STREAM : TEXT_PLAIN);
+        response.setContentLength(length);
+        response.getOutputStream().write(buffer, 0, length);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int putVarint(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int putDecimal(byte[] buffer, int position, long value) {
+        if (value == Long.MIN_VALUE) {
+            byte[] bytes = Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            return position + bytes.length;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+}
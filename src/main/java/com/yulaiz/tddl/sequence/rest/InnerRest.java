@@ -1,18 +1,33 @@
 package com.yulaiz.tddl.sequence.rest;
 
 import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
 import com.yulaiz.tddl.sequence.service.Sequence;
 import com.yulaiz.tddl.sequence.vo.Result;
+import com.yulaiz.tddl.sequence.vo.SequenceBatchRequest;
+import com.yulaiz.tddl.sequence.vo.SequenceBatchResult;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Slf4j
 @RestController
@@ -20,68 +35,258 @@ import java.util.List;
 @RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
 public class InnerRest {
     private final Sequence sequence;
+    /**
+     * 单次租用的序列值个数上限
+     */
+    @Value("${sequence.lease.max-size:100000}")
+    private int leaseMaxSize;
+    /**
+     * 请求日志的抽样比例, 1 为全部打印, 0 为不打印
+     */
+    @Value("${sequence.log.sample-rate:0.01}")
+    private double logSampleRate;
+    /**
+     * 多序列请求一次最多取的值个数
+     */
+    @Value("${sequence.batch.max-count:10000}")
+    private int batchMaxCount;
 
+    /**
+     * 取得序列下一个值, Accept 为 text/plain 或 application/octet-stream 时返回紧凑格式, 见 {@link CompactResponse}
+     */
     @PostMapping("/nextValue")
-    public Result<Long> nextValue(@RequestParam String sequenceName) {
-        log.info("请求序列:{}", sequenceName);
+    public Result<Long> nextValue(@RequestParam String sequenceName,
+                                  @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                  HttpServletResponse response) throws IOException {
+        CompactResponse.Format format = CompactResponse.negotiate(accept);
+        boolean sampled = sampleLog();
+        if (sampled) {
+            log.info("请求序列:{}", sequenceName);
+        }
         if (sequenceName == null) {
             log.debug("请求序列, 失败:序列名为空");
-            return Result.fail("序列名为空");
+            return fail(format, response, HttpServletResponse.SC_BAD_REQUEST, "序列名为空");
         }
         sequenceName = sequenceName.trim();
         if (sequenceName.isEmpty()) {
             log.debug("请求序列, 失败:序列名为空");
-            return Result.fail("序列名为空");
+            return fail(format, response, HttpServletResponse.SC_BAD_REQUEST, "序列名为空");
         }
         try {
             long sequenceValue = this.sequence.nextValue(sequenceName);
-            log.debug("请求序列:{}, 成功:{}", sequenceName, sequenceValue);
+            if (sampled) {
+                log.debug("请求序列:{}, 成功:{}", sequenceName, sequenceValue);
+            }
+            if (format != CompactResponse.Format.JSON) {
+                CompactResponse.writeValue(response, format, sequenceValue);
+                return null;
+            }
             return Result.success(sequenceValue);
         } catch (Exception e) {
             log.error(e.getMessage());
             if (e instanceof SequenceException) {
                 String message = e.getMessage();
                 log.debug("请求序列:{}, 失败:{}", sequenceName, message);
-                return Result.fail(message);
+                return fail(format, response, status((SequenceException) e), message);
             } else {
                 log.debug("请求序列:{}, 失败:系统内部错误", sequenceName);
-                return Result.fail("系统内部错误");
+                return fail(format, response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "系统内部错误");
             }
         }
     }
 
+    /**
+     * 取得序列下一组值, Accept 为 text/plain 或 application/octet-stream 时返回紧凑格式, 见 {@link CompactResponse}
+     */
     @PostMapping("/nextValueList")
     public Result<List<Long>> nextValueList(@RequestParam String sequenceName,
-                                            @RequestParam Integer step) {
-        log.info("请求批量序列:{}, 步长:{}", sequenceName, step);
+                                            @RequestParam Integer step,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                            HttpServletResponse response) throws IOException {
+        CompactResponse.Format format = CompactResponse.negotiate(accept);
+        boolean sampled = sampleLog();
+        if (sampled) {
+            log.info("请求批量序列:{}, 步长:{}", sequenceName, step);
+        }
         if (sequenceName == null) {
             log.debug("请求批量序列, 失败:序列名为空");
-            return Result.fail("序列名为空");
+            return fail(format, response, HttpServletResponse.SC_BAD_REQUEST, "序列名为空");
         }
         sequenceName = sequenceName.trim();
         if (sequenceName.isEmpty()) {
             log.debug("请求批量序列, 失败:序列名为空");
-            return Result.fail("序列名为空");
+            return fail(format, response, HttpServletResponse.SC_BAD_REQUEST, "序列名为空");
         }
         if (step == null || step <= 0) {
             log.debug("请求批量序列:{}, 失败:步长为空", sequenceName);
-            return Result.fail("步长为空");
+            return fail(format, response, HttpServletResponse.SC_BAD_REQUEST, "步长为空");
         }
         try {
+            if (format != CompactResponse.Format.JSON) {
+                long[] values = new long[step];
+                this.sequence.nextValues(sequenceName, values, 0, step);
+                if (sampled) {
+                    log.debug("请求批量序列:{}, 步长:{}, 成功:{}..{}", sequenceName, step, values[0], values[step - 1]);
+                }
+                CompactResponse.writeValues(response, format, values);
+                return null;
+            }
             List<Long> sequenceValueList = this.sequence.nextValueList(sequenceName, step);
-            log.debug("请求批量序列:{}, 步长:{}, 成功:{}", sequenceName, step, sequenceValueList);
+            if (sampled) {
+                log.debug("请求批量序列:{}, 步长:{}, 成功:{}", sequenceName, step, sequenceValueList);
+            }
             return Result.success(sequenceValueList);
         } catch (Exception e) {
             log.error(e.getMessage());
             if (e instanceof SequenceException) {
                 String message = e.getMessage();
                 log.debug("请求批量序列:{}, 步长:{}, 失败:{}", sequenceName, step, message);
-                return Result.fail(message);
+                return fail(format, response, status((SequenceException) e), message);
             } else {
                 log.debug("请求批量序列:{}, 步长:{}, 失败:系统异常", step, sequenceName);
+                return fail(format, response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "系统内部错误");
+            }
+        }
+    }
+
+    /**
+     * 一次请求取得多个序列的值, 同一序列的多项合并后只取一次, 再按请求顺序分配
+     * <p>
+     * 任一序列失败时整个请求失败, 已取出的值丢弃
+     */
+    @PostMapping("/nextValueBatch")
+    public Result<List<SequenceBatchResult>> nextValueBatch(@RequestBody List<SequenceBatchRequest> requests) {
+        if (sampleLog()) {
+            log.info("请求多序列:{}", requests);
+        }
+        if (requests == null || requests.isEmpty()) {
+            log.debug("请求多序列, 失败:请求为空");
+            return Result.fail("请求为空");
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        long total = 0;
+        for (SequenceBatchRequest request : requests) {
+            String sequenceName = request.getSequenceName() == null ? "" : request.getSequenceName().trim();
+            if (sequenceName.isEmpty()) {
+                log.debug("请求多序列, 失败:序列名为空");
+                return Result.fail("序列名为空");
+            }
+            if (request.getCount() == null || request.getCount() <= 0) {
+                log.debug("请求多序列:{}, 失败:个数为空", sequenceName);
+                return Result.fail("个数为空");
+            }
+            total += request.getCount();
+            if (total > batchMaxCount) {
+                log.debug("请求多序列, 失败:总个数超过上限 {}", batchMaxCount);
+                return Result.fail("总个数超过上限 " + batchMaxCount);
+            }
+            counts.merge(sequenceName, request.getCount(), Integer::sum);
+        }
+        try {
+            Map<String, long[]> valuesMap = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                long[] values = new long[entry.getValue()];
+                this.sequence.nextValues(entry.getKey(), values, 0, values.length);
+                valuesMap.put(entry.getKey(), values);
+            }
+            Map<String, Integer> offsets = new HashMap<>();
+            List<SequenceBatchResult> results = new ArrayList<>(requests.size());
+            for (SequenceBatchRequest request : requests) {
+                String sequenceName = request.getSequenceName().trim();
+                long[] values = valuesMap.get(sequenceName);
+                int offset = offsets.getOrDefault(sequenceName, 0);
+                List<Long> list = new ArrayList<>(request.getCount());
+                for (int i = offset; i < offset + request.getCount(); i++) {
+                    list.add(values[i]);
+                }
+                offsets.put(sequenceName, offset + request.getCount());
+                results.add(new SequenceBatchResult(sequenceName, list));
+            }
+            return Result.success(results);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            if (e instanceof SequenceException) {
+                String message = e.getMessage();
+                log.debug("请求多序列:{}, 失败:{}", counts.keySet(), message);
+                return Result.fail(message);
+            } else {
+                log.debug("请求多序列:{}, 失败:系统异常", counts.keySet());
                 return Result.fail("系统内部错误");
             }
         }
     }
 
+    /**
+     * 租用一段连续的序列值, 由客户端在本地发号, 通常只返回一段, 跨越区间时返回多段
+     */
+    @PostMapping("/nextSegments")
+    public Result<List<SequenceSegment>> nextSegments(@RequestParam String sequenceName,
+                                                      @RequestParam Integer step) {
+        boolean sampled = sampleLog();
+        if (sampled) {
+            log.info("请求租用序列:{}, 步长:{}", sequenceName, step);
+        }
+        if (sequenceName == null) {
+            log.debug("请求租用序列, 失败:序列名为空");
+            return Result.fail("序列名为空");
+        }
+        sequenceName = sequenceName.trim();
+        if (sequenceName.isEmpty()) {
+            log.debug("请求租用序列, 失败:序列名为空");
+            return Result.fail("序列名为空");
+        }
+        if (step == null || step <= 0) {
+            log.debug("请求租用序列:{}, 失败:步长为空", sequenceName);
+            return Result.fail("步长为空");
+        }
+        if (step > leaseMaxSize) {
+            log.debug("请求租用序列:{}, 失败:步长超过上限 {}", sequenceName, leaseMaxSize);
+            return Result.fail("步长超过上限 " + leaseMaxSize);
+        }
+        try {
+            List<SequenceSegment> segments = this.sequence.nextSegments(sequenceName, step);
+            if (sampled) {
+                log.debug("请求租用序列:{}, 步长:{}, 成功:{}", sequenceName, step, segments);
+            }
+            return Result.success(segments);
+        } catch (Exception e) {
+            log.error(e.getMessage());
+            if (e instanceof SequenceException) {
+                String message = e.getMessage();
+                log.debug("请求租用序列:{}, 步长:{}, 失败:{}", sequenceName, step, message);
+                return Result.fail(message);
+            } else {
+                log.debug("请求租用序列:{}, 步长:{}, 失败:系统异常", sequenceName, step);
+                return Result.fail("系统内部错误");
+            }
+        }
+    }
+
+    /**
+     * JSON 格式返回失败的 Result, 紧凑格式直接写出错误状态码和信息
+     */
+    private <T> Result<T> fail(CompactResponse.Format format, HttpServletResponse response,
+                               int status, String message) throws IOException {
+        if (format == CompactResponse.Format.JSON) {
+            return Result.fail(message);
+        }
+        CompactResponse.writeError(response, status, message);
+        return null;
+    }
+
+    /**
+     * 紧凑格式的错误状态码, 序列不存在为 404, 其余为 500
+     */
+    private static int status(SequenceException e) {
+        return e instanceof SequenceNotFoundException
+                ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * 按 sequence.log.sample-rate 抽样打印请求日志, 失败日志不抽样
+     */
+    private boolean sampleLog() {
+        return logSampleRate >= 1 || (logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate);
+    }
+
 }
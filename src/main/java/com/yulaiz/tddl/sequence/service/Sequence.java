@@ -1,6 +1,7 @@
 package com.yulaiz.tddl.sequence.service;
 
 import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
 
 import java.util.List;
 
@@ -23,4 +24,25 @@ public interface Sequence {
      * @throws SequenceException 获取序列失败
      */
     List<Long> nextValueList(String sequenceName, int step) throws SequenceException;
+
+    /**
+     * 根据步长取得序列下一组值, 以连续区间的形式返回
+     *
+     * @param sequenceName 序列名称
+     * @param step         步长,一共获取多少个值
+     * @return 返回序列下一组值, 每段为一个连续区间 [start, end]
+     * @throws SequenceException 获取序列失败
+     */
+    List<SequenceSegment> nextSegments(String sequenceName, int step) throws SequenceException;
+
+    /**
+     * 取得序列下一组值, 写入调用方提供的数组
+     *
+     * @param sequenceName 序列名称
+     * @param values       存放序列值的数组
+     * @param offset       写入的起始下标
+     * @param length       一共获取多少个值
+     * @throws SequenceException 获取序列失败
+     */
+    void nextValues(String sequenceName, long[] values, int offset, int length) throws SequenceException;
 }
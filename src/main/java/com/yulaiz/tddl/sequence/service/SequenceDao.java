@@ -3,6 +3,12 @@ package com.yulaiz.tddl.sequence.service;
 import com.yulaiz.tddl.sequence.exception.SequenceException;
 import com.yulaiz.tddl.sequence.vo.SequenceRange;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public interface SequenceDao {
 
     /**
@@ -14,4 +20,64 @@ public interface SequenceDao {
      */
     SequenceRange nextRange(String sequenceName) throws SequenceException;
 
+    /**
+     * 取得下一个指定大小的序列区间, 忽略数据库中配置的步长
+     *
+     * @param sequenceName  序列名称
+     * @param requestedSize 区间大小, 小于等于 0 时使用数据库中配置的步长
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException;
+
+    /**
+     * 一次取得多个序列的下一个可用区间, 使用数据库中配置的步长
+     *
+     * @param sequenceNames 序列名称
+     * @return 序列名称到区间的映射, 见 {@link #nextRanges(Map)}
+     * @throws SequenceException 获取序列失败
+     */
+    default Map<String, SequenceRange> nextRanges(Collection<String> sequenceNames) throws SequenceException {
+        Map<String, Integer> requestedSizes = new LinkedHashMap<>();
+        for (String sequenceName : sequenceNames) {
+            requestedSizes.put(sequenceName, 0);
+        }
+        return nextRanges(requestedSizes);
+    }
+
+    /**
+     * 一次取得多个序列的下一个指定大小的区间, 默认逐个获取, 实现类可合并为一次数据库操作
+     * <p>
+     * 实现类可以把不存在或值非法的序列排除在结果中, 也可以让整批失败 (默认实现即如此),
+     * 调用方需要区分单个序列的结果时应在整批失败后逐个重试
+     *
+     * @param requestedSizes 序列名称到区间大小的映射, 大小小于等于 0 时使用数据库中配置的步长
+     * @return 序列名称到区间的映射, 可能不包含部分序列
+     * @throws SequenceException 获取序列失败, 或任一序列获取失败
+     */
+    default Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        Map<String, SequenceRange> ranges = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : requestedSizes.entrySet()) {
+            ranges.put(entry.getKey(), nextRange(entry.getKey(), entry.getValue()));
+        }
+        return ranges;
+    }
+
+    /**
+     * 列出序列表中的全部序列名称, 用于启动预热
+     *
+     * @return 序列名称, 不支持时返回空列表
+     * @throws SequenceException 获取失败
+     */
+    default List<String> listSequenceNames() throws SequenceException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 丢弃序列在本地缓存的信息, 序列从注册表中淘汰时调用
+     *
+     * @param sequenceName 序列名称
+     */
+    default void release(String sequenceName) {
+    }
 }
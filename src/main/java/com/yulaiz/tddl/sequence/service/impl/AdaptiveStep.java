@@ -0,0 +1,75 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 根据消耗速度动态调整每次获取的区间大小
+ * <p>
+ * 每次获取区间时记录与上次获取的间隔, 以上一段区间大小除以间隔得到消耗速度并做指数加权平均,
+ * 下一段区间大小 = 平均速度 * 目标时长, 并限制在 [minStep, maxStep] 之间, 单次最多放大或缩小一倍
+ */
+public class AdaptiveStep {
+    /**
+     * 指数加权平均系数
+     */
+    private static final double ALPHA = 0.3;
+
+    private final int minStep;
+    private final int maxStep;
+    private final long targetNanos;
+    /**
+     * 纳秒时钟
+     */
+    private final LongSupplier nanoClock;
+
+    private long lastRefillNanos;
+    private long lastSize;
+    /**
+     * 平均消耗速度, 单位: 个/纳秒
+     */
+    private double rate = -1;
+
+    public AdaptiveStep(int minStep, int maxStep, long targetMillis) {
+        this(minStep, maxStep, targetMillis, System::nanoTime);
+    }
+
+    public AdaptiveStep(int minStep, int maxStep, long targetMillis, LongSupplier nanoClock) {
+        this.minStep = minStep;
+        this.maxStep = maxStep;
+        this.targetNanos = targetMillis * 1_000_000L;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * 下一段区间的大小
+     *
+     * @return 区间大小, 尚无统计数据时返回 0, 表示使用数据库中配置的步长
+     */
+    public synchronized int nextSize() {
+        if (rate < 0 || lastSize <= 0) {
+            return 0;
+        }
+        double size = rate * targetNanos;
+        size = Math.min(size, lastSize * 2.0);
+        size = Math.max(size, lastSize / 2.0);
+        return (int) Math.max(minStep, Math.min(maxStep, size));
+    }
+
+    /**
+     * 记录一次区间获取
+     *
+     * @param range 本次获取到的区间
+     */
+    public synchronized void onRefill(SequenceRange range) {
+        long now = nanoClock.getAsLong();
+        if (lastSize > 0) {
+            long interval = Math.max(now - lastRefillNanos, 1L);
+            double sample = (double) lastSize / interval;
+            rate = rate < 0 ? sample : ALPHA * sample + (1 - ALPHA) * rate;
+        }
+        lastRefillNanos = now;
+        lastSize = range.getMax() - range.getMin() + 1;
+    }
+}
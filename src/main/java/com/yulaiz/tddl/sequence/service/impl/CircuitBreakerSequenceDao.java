@@ -0,0 +1,151 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带熔断的 SequenceDao
+ * <p>
+ * 连续 failureThreshold 次获取区间失败后熔断, openMillis 内直接抛出 {@link SequenceException} 不再访问数据库,
+ * 之后放行一次试探请求, 成功则恢复, 失败则继续熔断。
+ * 只有 {@link SequenceUnavailableException} (数据库异常、等待连接超时、乐观更新重试次数用尽等)
+ * 和耗时超过 slowCallMillis 的调用计为失败, 序列不存在等数据问题不计入
+ */
+@Slf4j
+public class CircuitBreakerSequenceDao implements SequenceDao {
+
+    private final SequenceDao delegate;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final long slowCallNanos;
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * 熔断结束时间, 为 0 时未熔断
+     */
+    private volatile long openUntil;
+
+    /**
+     * 熔断结束后是否已有试探请求在执行
+     */
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    public CircuitBreakerSequenceDao(SequenceDao delegate, int failureThreshold, long openMillis, long slowCallMillis) {
+        this.delegate = delegate;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.slowCallNanos = slowCallMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowCallMillis) : Long.MAX_VALUE;
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        boolean probe = acquire();
+        long start = System.nanoTime();
+        try {
+            SequenceRange range = delegate.nextRange(sequenceName, requestedSize);
+            onComplete(probe, System.nanoTime() - start > slowCallNanos);
+            return range;
+        } catch (SequenceException e) {
+            onComplete(probe, isFailure(e));
+            throw e;
+        } catch (RuntimeException e) {
+            onComplete(probe, true);
+            throw e;
+        } finally {
+            // 试探请求抛出 Error 时也要放行下一次试探
+            if (probe) {
+                probing.set(false);
+            }
+        }
+    }
+
+    @Override
+    public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        boolean probe = acquire();
+        long start = System.nanoTime();
+        try {
+            Map<String, SequenceRange> ranges = delegate.nextRanges(requestedSizes);
+            onComplete(probe, System.nanoTime() - start > slowCallNanos);
+            return ranges;
+        } catch (SequenceException e) {
+            onComplete(probe, isFailure(e));
+            throw e;
+        } catch (RuntimeException e) {
+            onComplete(probe, true);
+            throw e;
+        } finally {
+            // 试探请求抛出 Error 时也要放行下一次试探
+            if (probe) {
+                probing.set(false);
+            }
+        }
+    }
+
+    @Override
+    public List<String> listSequenceNames() throws SequenceException {
+        return delegate.listSequenceNames();
+    }
+
+    /**
+     * 是否处于熔断中
+     */
+    public boolean isOpen() {
+        long until = openUntil;
+        return until != 0 && (System.currentTimeMillis() < until || probing.get());
+    }
+
+    /**
+     * 熔断中直接失败, 熔断结束后只放行一个试探请求
+     *
+     * @return 是否为试探请求
+     */
+    private boolean acquire() throws SequenceException {
+        long until = openUntil;
+        if (until == 0) {
+            return false;
+        }
+        if (System.currentTimeMillis() < until || !probing.compareAndSet(false, true)) {
+            throw new SequenceUnavailableException("Sequence dao circuit is open, failures = " + failures.get()
+                    + ", retry after " + Math.max(0, until - System.currentTimeMillis()) + "ms");
+        }
+        return true;
+    }
+
+    private void onComplete(boolean probe, boolean failed) {
+        if (!failed) {
+            if (openUntil != 0) {
+                log.info("Sequence dao circuit is closed");
+            }
+            failures.set(0);
+            openUntil = 0;
+            return;
+        }
+        int count = failures.incrementAndGet();
+        if (probe || count == failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            log.warn("Sequence dao circuit is open for {}ms, failures = {}", openMillis, count);
+        }
+    }
+
+    private static boolean isFailure(SequenceException e) {
+        return e instanceof SequenceUnavailableException;
+    }
+}
@@ -0,0 +1,223 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 合并并发区间请求的 SequenceDao
+ * <p>
+ * 在一个很短的时间窗口内收集各个序列的区间请求, 窗口结束或请求数达到上限时通过
+ * {@link SequenceDao#nextRanges(Map)} 一次性获取, 减少集中补充区间时的连接获取和数据库请求。
+ * 整批失败时逐个重新获取, 一个序列不存在不会让同一批的其他请求失败。
+ * 单独获取在各自的调用线程中并行执行, 合并线程只负责批量请求
+ */
+@Slf4j
+public class CoalescingSequenceDao implements SequenceDao {
+
+    private final SequenceDao delegate;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 合并窗口, 单位: 微秒
+     */
+    private final long windowMicros;
+
+    /**
+     * 单批最多合并的请求数
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 等待合并结果的超时时间, 单位: 毫秒, 0 为不限制
+     */
+    private final long waitTimeoutMillis;
+
+    private final Lock lock = new ReentrantLock();
+
+    private List<Request> pending = new ArrayList<>();
+
+    private boolean scheduled;
+
+    private boolean closed;
+
+    public CoalescingSequenceDao(SequenceDao delegate, ScheduledExecutorService scheduler,
+                                 long windowMicros, int maxBatchSize, long waitTimeoutMillis) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        if (sequenceName == null) {
+            throw new IllegalArgumentException("序列名称不能为空");
+        }
+        Request request = new Request(sequenceName, requestedSize);
+        boolean flushNow = false;
+        boolean schedule = false;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new SequenceException("Coalescing sequence dao is closed");
+            }
+            pending.add(request);
+            if (pending.size() >= maxBatchSize) {
+                flushNow = true;
+            } else if (!scheduled) {
+                scheduled = true;
+                schedule = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (flushNow) {
+                scheduler.execute(this::flush);
+            } else if (schedule) {
+                scheduler.schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            flush();
+        }
+        SequenceRange range = await(request);
+        // 没有合并到批量请求中, 在当前线程单独获取
+        return range != null ? range : delegate.nextRange(sequenceName, requestedSize);
+    }
+
+    private SequenceRange await(Request request) throws SequenceException {
+        try {
+            return waitTimeoutMillis > 0
+                    ? request.future.get(waitTimeoutMillis, TimeUnit.MILLISECONDS)
+                    : request.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SequenceException) {
+                throw (SequenceException) e.getCause();
+            }
+            throw new SequenceException(e.getCause());
+        } catch (TimeoutException e) {
+            // 之后取到的区间丢弃, 序列只保证唯一不保证连续
+            request.future.cancel(false);
+            throw new SequenceException("Timed out waiting for coalesced range after " + waitTimeoutMillis
+                    + "ms, sequenceName = " + request.sequenceName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.future.cancel(false);
+            throw new SequenceException("Interrupted while waiting for coalesced range, sequenceName = "
+                    + request.sequenceName, e);
+        }
+    }
+
+    @Override
+    public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        return delegate.nextRanges(requestedSizes);
+    }
+
+    private void flush() {
+        List<Request> batch;
+        lock.lock();
+        try {
+            batch = pending;
+            pending = new ArrayList<>();
+            scheduled = false;
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        // 同一批中每个序列只能取一段区间, 同名的其余请求单独获取
+        Map<String, Request> merged = new LinkedHashMap<>();
+        List<Request> duplicates = new ArrayList<>();
+        for (Request request : batch) {
+            if (request.future.isDone()) {
+                // 等待超时已放弃
+                continue;
+            }
+            if (merged.putIfAbsent(request.sequenceName, request) != null) {
+                duplicates.add(request);
+            }
+        }
+        if (merged.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> requestedSizes = new LinkedHashMap<>();
+        for (Request request : merged.values()) {
+            requestedSizes.put(request.sequenceName, request.requestedSize);
+        }
+        try {
+            Map<String, SequenceRange> ranges = delegate.nextRanges(requestedSizes);
+            log.debug("Coalesced {} sequence range requests into one batch", requestedSizes.size());
+            for (Request request : merged.values()) {
+                SequenceRange range = ranges.get(request.sequenceName);
+                if (range == null) {
+                    // 不存在或值非法, 单独获取以得到具体的异常
+                    duplicates.add(request);
+                } else {
+                    request.future.complete(range);
+                }
+            }
+        } catch (Throwable e) {
+            if (merged.size() == 1) {
+                merged.values().iterator().next().future.completeExceptionally(e);
+            } else {
+                log.debug("Coalesced batch of {} sequences failed, fall back to single requests", merged.size(), e);
+                duplicates.addAll(0, merged.values());
+            }
+        }
+        for (Request request : duplicates) {
+            request.future.complete(null);
+        }
+    }
+
+    /**
+     * 关闭后不再接受请求, 尚未发出的请求立即失败, 不会一直等到超时
+     */
+    public void close() {
+        List<Request> batch;
+        lock.lock();
+        try {
+            closed = true;
+            batch = pending;
+            pending = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+        for (Request request : batch) {
+            request.future.completeExceptionally(new SequenceException("Coalescing sequence dao is closed"));
+        }
+    }
+
+    private static class Request {
+        private final String sequenceName;
+        private final int requestedSize;
+        private final CompletableFuture<SequenceRange> future = new CompletableFuture<>();
+
+        private Request(String sequenceName, int requestedSize) {
+            this.sequenceName = sequenceName;
+            this.requestedSize = requestedSize;
+        }
+    }
+}
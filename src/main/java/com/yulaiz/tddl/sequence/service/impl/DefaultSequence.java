@@ -3,10 +3,20 @@ package com.yulaiz.tddl.sequence.service.impl;
 import com.yulaiz.tddl.sequence.exception.SequenceException;
 import com.yulaiz.tddl.sequence.service.SequenceDao;
 import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 @Slf4j
@@ -16,48 +26,375 @@ public class DefaultSequence {
 
     private final String sequenceName;
 
+    private final SequenceOptions options;
+
     public DefaultSequence(SequenceDao sequenceDao, String sequenceName) {
+        this(sequenceDao, sequenceName, new SequenceOptions());
+    }
+
+    public DefaultSequence(SequenceDao sequenceDao, String sequenceName, SequenceOptions options) {
         this.sequenceDao = sequenceDao;
         this.sequenceName = sequenceName;
+        this.options = options;
+        this.adaptiveStep = options.isAdaptiveStepEnabled()
+                ? new AdaptiveStep(options.getMinStep(), options.getMaxStep(), options.getTargetMillis())
+                : null;
+        this.meters = options.getMetrics().meters(sequenceName);
+        this.meters.bind(this);
+        if (options.isStriped()) {
+            // 取不小于分段数的 2 的幂, 以位运算选择分段
+            int length = options.getStripes() <= 1 ? 1 : Integer.highestOneBit(options.getStripes() - 1) << 1;
+            this.stripes = new AtomicReferenceArray<>(length);
+            this.stripeMask = length - 1;
+        } else {
+            this.stripes = null;
+            this.stripeMask = 0;
+        }
     }
 
-    private final Lock lock = new ReentrantLock();
+    private final AdaptiveStep adaptiveStep;
+
+    private final SequenceMetrics.SequenceMeters meters;
+
+    private final AtomicReference<SequenceRange> currentRange = new AtomicReference<>();
+
+    /**
+     * 正在进行的区间切换, 只有 CAS 成功的线程会去获取并安装新区间, 其余线程等待其完成
+     */
+    private final AtomicReference<CompletableFuture<SequenceRange>> switching = new AtomicReference<>();
+
+    /**
+     * 等待区间切换的线程数, 只在限制等待线程数时计数
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 预取中或已预取完成的下一段区间
+     */
+    private final AtomicReference<CompletableFuture<SequenceRange>> nextRange = new AtomicReference<>();
+
+    /**
+     * 各分段当前的子区间, 不分段时为空
+     * <p>
+     * 热点序列的所有线程在同一个 {@link SequenceRange} 的计数上竞争, 分段后每个线程按线程 id 选择分段,
+     * 只在各自的子区间上自增, 子区间用完时再从当前区间切出 stripeSize 个值, 类似 LongAdder 的 cell。
+     * 各分段交替发号, 同一序列的值只保证唯一不保证递增
+     */
+    private final AtomicReferenceArray<SequenceRange> stripes;
 
-    private volatile SequenceRange currentRange;
+    private final int stripeMask;
 
     public long nextValue() throws SequenceException {
-        if (currentRange == null) {
-            lock.lock();
-            try {
-                if (currentRange == null) {
-                    currentRange = sequenceDao.nextRange(sequenceName);
+        if (stripes != null) {
+            return nextStripedValue();
+        }
+        for (; ; ) {
+            SequenceRange range = currentRange.get();
+            if (range != null) {
+                long value = range.getAndIncrement();
+                if (value != -1) {
+                    if (options.isPrefetchEnabled()) {
+                        prefetchIfNecessary(range, value);
+                    }
+                    if (value < 0) {
+                        throw new SequenceException("Sequence value overflow, value = " + value);
+                    }
+                    meters.issued(1);
+                    return value;
                 }
-            } finally {
-                lock.unlock();
             }
+            installNextRange(range);
         }
-        long value = currentRange.getAndIncrement();
-        if (value == -1) {
-            lock.lock();
-            try {
-                for (; ; ) {
-                    if (currentRange.isOver()) {
-                        currentRange = sequenceDao.nextRange(sequenceName);
+    }
+
+    private long nextStripedValue() throws SequenceException {
+        int index = stripeIndex();
+        for (; ; ) {
+            SequenceRange stripe = stripes.get(index);
+            if (stripe != null) {
+                long value = stripe.getAndIncrement();
+                if (value != -1) {
+                    meters.issued(1);
+                    return value;
+                }
+            }
+            // 切出的子区间未能装入时被丢弃, 只会留下空洞不会重复
+            stripes.compareAndSet(index, stripe, carveStripe());
+        }
+    }
+
+    /**
+     * 从当前区间切出 stripeSize 个值作为子区间, 当前区间剩余不足时只切出剩余部分
+     */
+    private SequenceRange carveStripe() throws SequenceException {
+        int size = options.getStripeSize();
+        for (; ; ) {
+            SequenceRange range = currentRange.get();
+            if (range != null) {
+                long start = range.getAndAdd(size);
+                if (start != -1) {
+                    long end = start + Math.min(size, range.getMax() - start + 1) - 1;
+                    if (options.isPrefetchEnabled()) {
+                        prefetchIfNecessary(range, end);
                     }
-                    value = currentRange.getAndIncrement();
-                    if (value == -1) {
-                        continue;
+                    if (end < 0) {
+                        throw new SequenceException("Sequence value overflow, value = " + end);
                     }
-                    break;
+                    return new SequenceRange(start, end);
                 }
-            } finally {
-                lock.unlock();
             }
+            installNextRange(range);
         }
-        if (value < 0) {
-            throw new SequenceException("Sequence value overflow, value = " + value);
+    }
+
+    /**
+     * 按线程 id 散列选择分段, 虚拟线程同样各自有 id
+     */
+    private int stripeIndex() {
+        long id = Thread.currentThread().threadId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    /**
+     * 一次取得 size 个值, 优先从当前区间整段切出, 不足部分从下一段区间继续切
+     *
+     * @param size 需要的个数
+     * @return 序列值
+     * @throws SequenceException 获取序列失败
+     */
+    public List<Long> nextValueList(int size) throws SequenceException {
+        List<Long> list = new ArrayList<>(size);
+        nextSegments(size, (start, end) -> {
+            for (long value = start; value <= end; value++) {
+                list.add(value);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * 一次取得 size 个值, 以连续区间的形式返回, 不为每个值装箱
+     *
+     * @param size 需要的个数
+     * @return 连续区间列表, 通常只有一段, 跨越区间时有多段
+     * @throws SequenceException 获取序列失败
+     */
+    public List<SequenceSegment> nextSegments(int size) throws SequenceException {
+        List<SequenceSegment> list = new ArrayList<>(2);
+        nextSegments(size, (start, end) -> list.add(new SequenceSegment(start, end)));
+        return list;
+    }
+
+    /**
+     * 一次取得 length 个值, 写入 values[offset, offset + length)
+     *
+     * @param values 存放序列值的数组
+     * @param offset 写入的起始下标
+     * @param length 需要的个数
+     * @throws SequenceException 获取序列失败
+     */
+    public void nextValues(long[] values, int offset, int length) throws SequenceException {
+        int[] index = {offset};
+        nextSegments(length, (start, end) -> {
+            int i = index[0];
+            for (long value = start; value <= end; value++) {
+                values[i++] = value;
+            }
+            index[0] = i;
+        });
+    }
+
+    private void nextSegments(int size, SegmentConsumer consumer) throws SequenceException {
+        long remaining = size;
+        while (remaining > 0) {
+            SequenceRange range = currentRange.get();
+            if (range != null) {
+                long start = range.getAndAdd(remaining);
+                if (start != -1) {
+                    long end = start + Math.min(remaining, range.getMax() - start + 1) - 1;
+                    if (options.isPrefetchEnabled()) {
+                        prefetchIfNecessary(range, end);
+                    }
+                    // 区间上限为 Long.MAX_VALUE 时计数会溢出为负数
+                    if (start < 0 || end < 0) {
+                        throw new SequenceException("Sequence value overflow, value = " + (start < 0 ? start : end));
+                    }
+                    consumer.accept(start, end);
+                    meters.issued(end - start + 1);
+                    remaining -= end - start + 1;
+                    continue;
+                }
+            }
+            installNextRange(range);
+        }
+    }
+
+    /**
+     * 接收一段连续的序列值 [start, end]
+     */
+    @FunctionalInterface
+    private interface SegmentConsumer {
+        void accept(long start, long end);
+    }
+
+    /**
+     * 用新区间替换已用完的区间, 同一时刻只有一个线程执行替换, 其余线程等待替换完成后重试
+     *
+     * @param expected 已用完的区间, 首次加载时为空
+     */
+    private void installNextRange(SequenceRange expected) throws SequenceException {
+        CompletableFuture<SequenceRange> pending = switching.get();
+        if (pending == null) {
+            CompletableFuture<SequenceRange> future = new CompletableFuture<>();
+            if (switching.compareAndSet(null, future)) {
+                // 先清除切换标记再唤醒等待线程, 避免等待线程拿到已完成的旧标记后空转
+                try {
+                    // 其他线程可能已经完成了替换
+                    if (currentRange.get() == expected) {
+                        SequenceRange range = expected == null ? fetchRange() : switchRange();
+                        currentRange.set(range);
+                    }
+                    switching.set(null);
+                    future.complete(currentRange.get());
+                } catch (Throwable e) {
+                    switching.set(null);
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+                return;
+            }
+            pending = switching.get();
+            if (pending == null) {
+                return;
+            }
+        }
+        awaitSwitch(pending);
+    }
+
+    /**
+     * 等待其他线程完成区间切换
+     * <p>
+     * 等待线程数超过 maxRefillWaiters 时直接失败, 等待超过 refillWaitTimeoutMillis 时超时失败,
+     * 避免一个慢序列占满请求线程影响其他序列
+     */
+    private void awaitSwitch(CompletableFuture<SequenceRange> pending) throws SequenceException {
+        int maxWaiters = options.getMaxRefillWaiters();
+        if (maxWaiters > 0 && waiters.incrementAndGet() > maxWaiters) {
+            waiters.decrementAndGet();
+            throw new SequenceException("Too many threads waiting for sequence range, sequenceName = " + sequenceName);
+        }
+        long waitStart = System.nanoTime();
+        try {
+            long timeoutMillis = options.getRefillWaitTimeoutMillis();
+            if (timeoutMillis > 0) {
+                pending.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                pending.join();
+            }
+        } catch (TimeoutException e) {
+            throw new SequenceException("Timed out waiting for sequence range after "
+                    + options.getRefillWaitTimeoutMillis() + "ms, sequenceName = " + sequenceName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SequenceException("Interrupted waiting for sequence range, sequenceName = " + sequenceName, e);
+        } catch (CompletionException | ExecutionException e) {
+            if (e.getCause() instanceof SequenceException) {
+                throw (SequenceException) e.getCause();
+            }
+            throw new SequenceException(e.getCause());
+        } finally {
+            if (maxWaiters > 0) {
+                waiters.decrementAndGet();
+            }
+            meters.waited(System.nanoTime() - waitStart);
+        }
+    }
+
+    /**
+     * 使用预热时获取的区间作为第一段区间, 已经有区间时忽略
+     *
+     * @param range 预热时获取的区间
+     * @return 是否被采用
+     */
+    public boolean preload(SequenceRange range) {
+        return currentRange.compareAndSet(null, range);
+    }
+
+    /**
+     * 是否已经加载了区间
+     */
+    public boolean isLoaded() {
+        return currentRange.get() != null;
+    }
+
+    /**
+     * 当前区间剩余的值个数, 不包括预取的区间和分段中已切出的子区间
+     */
+    public long getRemaining() {
+        SequenceRange range = currentRange.get();
+        return range == null ? 0 : range.getRemaining();
+    }
+
+    /**
+     * 当前区间剩余量低于水位时, 提交异步任务预取下一段区间, 同一时刻最多只有一个预取任务
+     */
+    private void prefetchIfNecessary(SequenceRange range, long value) {
+        long remaining = range.getMax() - value;
+        if (remaining >= (range.getMax() - range.getMin() + 1) * options.getPrefetchWatermark()) {
+            return;
+        }
+        if (nextRange.get() != null) {
+            return;
+        }
+        CompletableFuture<SequenceRange> future = new CompletableFuture<>();
+        if (!nextRange.compareAndSet(null, future)) {
+            return;
+        }
+        try {
+            options.getRefillExecutor().execute(() -> {
+                try {
+                    future.complete(fetchRange());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Prefetch sequence range rejected, sequenceName = {}", sequenceName);
+            nextRange.compareAndSet(future, null);
+        }
+    }
+
+    /**
+     * 切换到下一段区间, 优先使用预取的区间, 预取失败时同步从数据库获取
+     */
+    private SequenceRange switchRange() throws SequenceException {
+        CompletableFuture<SequenceRange> future = nextRange.getAndSet(null);
+        if (future != null) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                log.warn("Prefetch sequence range failed, sequenceName = {}, fallback to fetch directly",
+                        sequenceName, e.getCause());
+            }
+        }
+        return fetchRange();
+    }
+
+    /**
+     * 从数据库获取下一段区间, 开启动态步长时按消耗速度决定区间大小
+     */
+    private SequenceRange fetchRange() throws SequenceException {
+        long start = System.nanoTime();
+        SequenceRange range;
+        if (adaptiveStep == null) {
+            range = sequenceDao.nextRange(sequenceName);
+        } else {
+            range = sequenceDao.nextRange(sequenceName, adaptiveStep.nextSize());
+            adaptiveStep.onRefill(range);
         }
-        return value;
+        meters.refilled(System.nanoTime() - start);
+        return range;
     }
 
 }
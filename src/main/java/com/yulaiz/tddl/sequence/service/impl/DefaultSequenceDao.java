@@ -1,13 +1,20 @@
 package com.yulaiz.tddl.sequence.service.impl;
 
 import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
+import com.yulaiz.tddl.sequence.exception.SequenceRetryExhaustedException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
 import com.yulaiz.tddl.sequence.service.SequenceDao;
 import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.stereotype.Service;
 
 import javax.sql.DataSource;
@@ -17,12 +24,19 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
 public class DefaultSequenceDao implements SequenceDao {
     private final DataSource dataSource;
+    private final SequenceMetrics sequenceMetrics;
     /**
      * 重试次数
      */
@@ -53,10 +67,139 @@ public class DefaultSequenceDao implements SequenceDao {
     @Value("${sequence.structure.modified}")
     private String DEFAULT_GMT_MODIFIED_COLUMN_NAME;
 
-    private static final long DELTA = 100000000L;
+    /**
+     * 区间分配方式: cas 先查询再按旧值乐观更新, 冲突时重试;
+     * atomic 按数据库方言用一条语句原子预留区间, 见 {@link SequenceDialect}
+     */
+    @Value("${sequence.allocation.mode:cas}")
+    private String allocationMode;
+
+    private static final String ATOMIC_MODE = "atomic";
 
-    private volatile String selectSql;
-    private volatile String updateSql;
+    /**
+     * atomic 模式使用的数据库方言: auto 按数据库产品名识别, 或指定 mysql, postgresql, h2
+     */
+    @Value("${sequence.dialect:auto}")
+    private String dialectName;
+
+    private static final String AUTO_DIALECT = "auto";
+
+    private SequenceTable sequenceTable;
+
+    /**
+     * 首次使用时确定, 并发识别的结果相同, 无需加锁
+     */
+    private volatile SequenceDialect dialect;
+
+    /**
+     * 获取区间专用的连接数, 为 0 时从连接池借用连接
+     */
+    @Value("${sequence.refill.connections:0}")
+    private int refillConnectionCount;
+    /**
+     * 等待专用连接的超时时间, 单位: 毫秒
+     */
+    @Value("${sequence.refill.connection-timeout-millis:3000}")
+    private long refillConnectionTimeoutMillis;
+    /**
+     * 专用连接的最长使用时间, 单位: 毫秒, 应小于数据库的 wait_timeout
+     */
+    @Value("${sequence.refill.connection-max-lifetime-millis:1800000}")
+    private long refillConnectionMaxLifetimeMillis;
+
+    private RefillConnections refillConnections;
+
+    static final long DELTA = 100000000L;
+
+    private String selectSql;
+    private String updateSql;
+    private String batchUpdateSql;
+
+    /**
+     * atomic 模式下方言取不回步长时缓存的数据库步长, 首次使用时读取, 超过 step-cache-millis 后重新读取
+     */
+    private final Map<String, CachedStep> stepCache = new ConcurrentHashMap<>();
+    /**
+     * 缓存的步长的有效期, 修改序列表中的步长后最迟该时长后生效, 单位: 毫秒
+     */
+    @Value("${sequence.allocation.step-cache-millis:60000}")
+    private long stepCacheMillis;
+
+    private record CachedStep(int step, long loadedAt) {
+    }
+
+    /**
+     * 启动时生成 SQL, 取区间时不再加锁, 避免虚拟线程在 synchronized 中被固定在载体线程上
+     */
+    @PostConstruct
+    public void init() {
+        selectSql = "select " + DEFAULT_VALUE_COLUMN_NAME
+                + ", " + DEFAULT_STEP_COLUMN_STEP +
+                " from " + DEFAULT_TABLE_NAME +
+                " where " + DEFAULT_NAME_COLUMN_NAME + " = ?" +
+                " limit 1";
+        updateSql = "update " + DEFAULT_TABLE_NAME +
+                " set " + DEFAULT_VALUE_COLUMN_NAME + " = ?" +
+                ", " + DEFAULT_GMT_MODIFIED_COLUMN_NAME + " = ? " +
+                "where " + DEFAULT_NAME_COLUMN_NAME + " = ? " +
+                "and " + DEFAULT_VALUE_COLUMN_NAME + " = ?";
+        batchUpdateSql = "update " + DEFAULT_TABLE_NAME +
+                " set " + DEFAULT_VALUE_COLUMN_NAME + " = ?" +
+                ", " + DEFAULT_GMT_MODIFIED_COLUMN_NAME + " = ? " +
+                "where " + DEFAULT_NAME_COLUMN_NAME + " = ?";
+        sequenceTable = new SequenceTable(DEFAULT_TABLE_NAME, DEFAULT_NAME_COLUMN_NAME,
+                DEFAULT_VALUE_COLUMN_NAME, DEFAULT_STEP_COLUMN_STEP, DEFAULT_GMT_MODIFIED_COLUMN_NAME);
+        if (dialectName != null && !AUTO_DIALECT.equalsIgnoreCase(dialectName)) {
+            dialect = SequenceDialect.forName(dialectName, sequenceTable);
+            if (dialect == null) {
+                throw new IllegalStateException("Unknown sequence dialect: " + dialectName);
+            }
+        }
+        if (refillConnectionCount > 0) {
+            refillConnections = new RefillConnections(refillDataSource(), refillConnectionCount,
+                    refillConnectionTimeoutMillis, refillConnectionMaxLifetimeMillis);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refillConnections != null) {
+            refillConnections.close();
+        }
+    }
+
+    /**
+     * 专用连接不经过连接池, 直接使用连接池的 url、账号和连接属性建立; MySQL 开启服务端 prepare
+     * <p>
+     * 注入的 dataSource 是 @Lazy 代理, 需要通过 unwrap 取得实际的连接池
+     */
+    private DataSource refillDataSource() {
+        HikariDataSource hikariDataSource;
+        try {
+            if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+                log.warn("DataSource is not a HikariDataSource, refill connections are borrowed from the pool");
+                return dataSource;
+            }
+            hikariDataSource = dataSource.unwrap(HikariDataSource.class);
+        } catch (SQLException e) {
+            log.warn("Cannot unwrap HikariDataSource, refill connections are borrowed from the pool", e);
+            return dataSource;
+        }
+        DriverManagerDataSource refillDataSource = new DriverManagerDataSource(hikariDataSource.getJdbcUrl(),
+                hikariDataSource.getUsername(), hikariDataSource.getPassword());
+        if (hikariDataSource.getDriverClassName() != null) {
+            refillDataSource.setDriverClassName(hikariDataSource.getDriverClassName());
+        }
+        Properties properties = new Properties();
+        properties.putAll(hikariDataSource.getDataSourceProperties());
+        if (hikariDataSource.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            properties.setProperty("useServerPrepStmts", "true");
+        }
+        if (!properties.isEmpty()) {
+            refillDataSource.setConnectionProperties(properties);
+        }
+        return refillDataSource;
+    }
 
     /**
      * 取得下一个可用的序列区间
@@ -67,107 +210,334 @@ public class DefaultSequenceDao implements SequenceDao {
      */
     @Override
     public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    /**
+     * 取得下一个指定大小的序列区间, 忽略数据库中配置的步长
+     *
+     * @param sequenceName  序列名称
+     * @param requestedSize 区间大小, 小于等于 0 时使用数据库中配置的步长
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
         if (sequenceName == null) {
             throw new IllegalArgumentException("序列名称不能为空");
         }
+        if (ATOMIC_MODE.equalsIgnoreCase(allocationMode)) {
+            return nextRangeAtomic(sequenceName, requestedSize);
+        }
+        for (int i = 0; i < DEFAULT_RETRY_TIMES + 1; ++i) {
+            SequenceRange range;
+            try {
+                range = refillConnections != null
+                        ? refillConnections.execute(c ->
+                        tryNextRange(c.prepare(selectSql), c.prepare(updateSql), sequenceName, requestedSize))
+                        : tryNextRange(sequenceName, requestedSize);
+            } catch (SQLException e) {
+                throw new SequenceUnavailableException(e);
+            }
+            if (range != null) {
+                if (i > 0) {
+                    sequenceMetrics.meters(sequenceName).retried(i);
+                }
+                return range;
+            }
+        }
+        sequenceMetrics.meters(sequenceName).retried(DEFAULT_RETRY_TIMES);
+        throw new SequenceRetryExhaustedException(DEFAULT_RETRY_TIMES);
+    }
+
+    /**
+     * 从连接池借用连接, 查询后按旧值乐观更新一次
+     *
+     * @return 区间, 乐观更新冲突时返回空
+     */
+    private SequenceRange tryNextRange(String sequenceName, int requestedSize) throws SQLException, SequenceException {
+        Connection conn = null;
+        PreparedStatement selectStmt = null;
+        PreparedStatement updateStmt = null;
+        try {
+            conn = dataSource.getConnection();
+            selectStmt = conn.prepareStatement(selectSql);
+            updateStmt = conn.prepareStatement(updateSql);
+            return tryNextRange(selectStmt, updateStmt, sequenceName, requestedSize);
+        } finally {
+            closeStatement(selectStmt);
+            closeStatement(updateStmt);
+            closeConnection(conn);
+        }
+    }
+
+    /**
+     * 查询后按旧值乐观更新一次, 语句由调用方创建和关闭
+     *
+     * @return 区间, 乐观更新冲突时返回空
+     */
+    private SequenceRange tryNextRange(PreparedStatement selectStmt, PreparedStatement updateStmt,
+                                       String sequenceName, int requestedSize) throws SQLException, SequenceException {
         long oldValue;
-        long newValue;
         int step;
+        selectStmt.setString(1, sequenceName);
+        try (ResultSet rs = selectStmt.executeQuery()) {
+            if (!rs.next()) {
+                String message = "Sequence does not exist, " +
+                        "please check table " + DEFAULT_TABLE_NAME;
+                throw new SequenceNotFoundException(message);
+            }
+            oldValue = rs.getLong(1);
+            step = requestedSize > 0 ? requestedSize : rs.getInt(2);
+        }
+        if (oldValue < 0) {
+            String message = "Sequence value cannot be less than zero, " +
+                    "value = " + oldValue + ", " +
+                    "please check table " + DEFAULT_TABLE_NAME;
+            throw new SequenceException(message);
+        }
+        if (oldValue > Long.MAX_VALUE - DELTA) {
+            String message = "Sequence value overflow, " +
+                    "value = " + oldValue + ", " +
+                    "please check table " + DEFAULT_TABLE_NAME;
+            throw new SequenceException(message);
+        }
+        long newValue = oldValue + step;
+        updateStmt.setLong(1, newValue);
+        updateStmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+        updateStmt.setString(3, sequenceName);
+        updateStmt.setLong(4, oldValue);
+        if (updateStmt.executeUpdate() == 0) {
+            return null;
+        }
+        return new SequenceRange(oldValue + 1, newValue);
+    }
+
+    /**
+     * 一次取得多个序列的下一个指定大小的区间
+     * <p>
+     * 在同一个事务内 select ... for update 锁定所有序列行, 再批量更新, 无论哪种分配方式都不需要重试
+     *
+     * @param requestedSizes 序列名称到区间大小的映射, 大小小于等于 0 时使用数据库中配置的步长
+     * @return 序列名称到区间的映射, 不存在或值非法的序列不包含在结果中
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        Map<String, SequenceRange> ranges = new LinkedHashMap<>();
+        if (requestedSizes.isEmpty()) {
+            return ranges;
+        }
         Connection conn = null;
         PreparedStatement stmt = null;
         ResultSet rs = null;
-        for (int i = 0; i < DEFAULT_RETRY_TIMES + 1; ++i) {
+        try {
+            conn = dataSource.getConnection();
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
             try {
-                conn = dataSource.getConnection();
-                try {
-                    stmt = conn.prepareStatement(getSelectSql());
-                    stmt.setString(1, sequenceName);
-                    rs = stmt.executeQuery();
-                    if (!rs.next()) {
-                        String message = "Sequence does not exist, " +
-                                "please check table " + DEFAULT_TABLE_NAME;
-                        throw new SequenceException(message);
-                    }
-                    oldValue = rs.getLong(1);
-                    step = rs.getInt(2);
-                    if (oldValue < 0) {
-                        String message = "Sequence value cannot be less than zero, " +
-                                "value = " + oldValue + ", " +
-                                "please check table " + DEFAULT_TABLE_NAME;
-                        throw new SequenceException(message);
-                    }
-
-                    if (oldValue > Long.MAX_VALUE - DELTA) {
-                        String message = "Sequence value overflow, " +
-                                "value = " + oldValue + ", " +
-                                "please check table " + DEFAULT_TABLE_NAME;
-                        throw new SequenceException(message);
+                stmt = conn.prepareStatement(getBatchSelectSql(requestedSizes.size()));
+                int index = 1;
+                for (String sequenceName : requestedSizes.keySet()) {
+                    stmt.setString(index++, sequenceName);
+                }
+                rs = stmt.executeQuery();
+                while (rs.next()) {
+                    String sequenceName = rs.getString(1);
+                    long oldValue = rs.getLong(2);
+                    Integer requestedSize = requestedSizes.get(sequenceName);
+                    int step = requestedSize != null && requestedSize > 0 ? requestedSize : rs.getInt(3);
+                    if (oldValue < 0 || oldValue > Long.MAX_VALUE - DELTA || step <= 0) {
+                        log.warn("Sequence value or step is invalid, sequenceName = {}, value = {}, step = {}, " +
+                                "please check table {}", sequenceName, oldValue, step, DEFAULT_TABLE_NAME);
+                        continue;
                     }
-                    newValue = oldValue + step;
-                } finally {
-                    closeResultSet(rs);
-                    rs = null;
-                    closeStatement(stmt);
-                    stmt = null;
+                    ranges.put(sequenceName, new SequenceRange(oldValue + 1, oldValue + step));
                 }
+                closeResultSet(rs);
+                rs = null;
+                closeStatement(stmt);
+                stmt = null;
 
-                try {
-                    stmt = conn.prepareStatement(getUpdateSql());
-                    stmt.setLong(1, newValue);
-                    stmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
-                    stmt.setString(3, sequenceName);
-                    stmt.setLong(4, oldValue);
-                    int affectedRows = stmt.executeUpdate();
-                    if (affectedRows == 0) {
-                        // retry
-                        continue;
+                if (!ranges.isEmpty()) {
+                    Timestamp now = new Timestamp(System.currentTimeMillis());
+                    stmt = conn.prepareStatement(batchUpdateSql);
+                    for (Map.Entry<String, SequenceRange> entry : ranges.entrySet()) {
+                        stmt.setLong(1, entry.getValue().getMax());
+                        stmt.setTimestamp(2, now);
+                        stmt.setString(3, entry.getKey());
+                        stmt.addBatch();
                     }
-                    return new SequenceRange(oldValue + 1, newValue);
-                } finally {
-                    closeStatement(stmt);
-                    stmt = null;
+                    stmt.executeBatch();
                 }
+                conn.commit();
+                return ranges;
             } catch (SQLException e) {
-                throw new SequenceException(e);
+                conn.rollback();
+                throw e;
             } finally {
-                closeConnection(conn);
-                conn = null;
+                conn.setAutoCommit(autoCommit);
             }
+        } catch (SQLException e) {
+            throw new SequenceUnavailableException(e);
+        } finally {
+            closeResultSet(rs);
+            closeStatement(stmt);
+            closeConnection(conn);
         }
-        throw new SequenceException("Retried too many times, retryTimes = " + DEFAULT_RETRY_TIMES);
     }
 
-    private String getSelectSql() {
-        if (selectSql == null) {
-            synchronized (this) {
-                if (selectSql == null) {
-                    selectSql = "select " + DEFAULT_VALUE_COLUMN_NAME
-                            + ", " + DEFAULT_STEP_COLUMN_STEP +
-                            " from " + DEFAULT_TABLE_NAME +
-                            " where " + DEFAULT_NAME_COLUMN_NAME + " = ?" +
-                            " limit 1";
-                }
+    /**
+     * 列出序列表中的全部序列名称, 用于启动预热
+     *
+     * @return 序列名称
+     * @throws SequenceException 获取失败
+     */
+    @Override
+    public List<String> listSequenceNames() throws SequenceException {
+        return listSequenceNames(dataSource, DEFAULT_TABLE_NAME, DEFAULT_NAME_COLUMN_NAME);
+    }
+
+    static List<String> listSequenceNames(DataSource dataSource, String tableName, String nameColumnName)
+            throws SequenceException {
+        List<String> sequenceNames = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement("select " + nameColumnName + " from " + tableName);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                sequenceNames.add(rs.getString(1));
             }
+            return sequenceNames;
+        } catch (SQLException e) {
+            throw new SequenceUnavailableException(e);
+        } finally {
+            closeResultSet(rs);
+            closeStatement(stmt);
+            closeConnection(conn);
         }
-        return selectSql;
     }
 
-    private String getUpdateSql() {
-        if (updateSql == null) {
-            synchronized (this) {
-                if (updateSql == null) {
-                    updateSql = "update " + DEFAULT_TABLE_NAME +
-                            " set " + DEFAULT_VALUE_COLUMN_NAME + " = ?" +
-                            ", " + DEFAULT_GMT_MODIFIED_COLUMN_NAME + " = ? " +
-                            "where " + DEFAULT_NAME_COLUMN_NAME + " = ? " +
-                            "and " + DEFAULT_VALUE_COLUMN_NAME + " = ?";
-                }
+    /**
+     * 丢弃缓存的步长
+     *
+     * @param sequenceName 序列名称
+     */
+    @Override
+    public void release(String sequenceName) {
+        stepCache.remove(sequenceName);
+    }
+
+    /**
+     * 按方言用一条语句原子预留区间, 无需重试; 方言取不回步长时先读取并缓存数据库步长
+     */
+    private SequenceRange nextRangeAtomic(String sequenceName, int requestedSize) throws SequenceException {
+        SequenceDialect dialect = getDialect();
+        int size = requestedSize > 0 || dialect.returnsStep() ? requestedSize : getStep(sequenceName);
+        if (refillConnections != null) {
+            try {
+                return refillConnections.execute(c -> dialect.reserve(c::prepare, sequenceName, size));
+            } catch (SQLException e) {
+                throw new SequenceUnavailableException(e);
+            }
+        }
+        Connection conn = null;
+        List<PreparedStatement> statements = new ArrayList<>(2);
+        try {
+            Connection connection = dataSource.getConnection();
+            conn = connection;
+            return dialect.reserve(sql -> {
+                PreparedStatement stmt = connection.prepareStatement(sql);
+                statements.add(stmt);
+                return stmt;
+            }, sequenceName, size);
+        } catch (SQLException e) {
+            throw new SequenceUnavailableException(e);
+        } finally {
+            for (PreparedStatement stmt : statements) {
+                closeStatement(stmt);
+            }
+            closeConnection(conn);
+        }
+    }
+
+    private SequenceDialect getDialect() throws SequenceException {
+        SequenceDialect dialect = this.dialect;
+        if (dialect != null) {
+            return dialect;
+        }
+        String productName;
+        try (Connection conn = dataSource.getConnection()) {
+            productName = conn.getMetaData().getDatabaseProductName();
+        } catch (SQLException e) {
+            throw new SequenceUnavailableException(e);
+        }
+        dialect = SequenceDialect.forDatabase(productName, sequenceTable);
+        if (dialect == null) {
+            throw new SequenceException("No sequence dialect for database " + productName +
+                    ", please use allocation mode cas");
+        }
+        log.info("Sequence dialect: {}, database: {}", dialect.getName(), productName);
+        this.dialect = dialect;
+        return dialect;
+    }
+
+    private int getStep(String sequenceName) throws SequenceException {
+        CachedStep cached = stepCache.get(sequenceName);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < stepCacheMillis) {
+            return cached.step();
+        }
+        int step;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement(selectSql);
+            stmt.setString(1, sequenceName);
+            rs = stmt.executeQuery();
+            if (!rs.next()) {
+                String message = "Sequence does not exist, " +
+                        "please check table " + DEFAULT_TABLE_NAME;
+                throw new SequenceNotFoundException(message);
             }
+            step = rs.getInt(2);
+            if (step <= 0) {
+                String message = "Sequence step must be greater than zero, " +
+                        "step = " + step + ", " +
+                        "please check table " + DEFAULT_TABLE_NAME;
+                throw new SequenceException(message);
+            }
+            stepCache.put(sequenceName, new CachedStep(step, now));
+            return step;
+        } catch (SQLException e) {
+            throw new SequenceUnavailableException(e);
+        } finally {
+            closeResultSet(rs);
+            closeStatement(stmt);
+            closeConnection(conn);
+        }
+    }
+
+    private String getBatchSelectSql(int size) {
+        StringBuilder sql = new StringBuilder("select ")
+                .append(DEFAULT_NAME_COLUMN_NAME)
+                .append(", ").append(DEFAULT_VALUE_COLUMN_NAME)
+                .append(", ").append(DEFAULT_STEP_COLUMN_STEP)
+                .append(" from ").append(DEFAULT_TABLE_NAME)
+                .append(" where ").append(DEFAULT_NAME_COLUMN_NAME).append(" in (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
         }
-        return updateSql;
+        return sql.append(") order by ").append(DEFAULT_NAME_COLUMN_NAME)
+                .append(" for update").toString();
     }
 
-    private static void closeResultSet(ResultSet rs) {
+    static void closeResultSet(ResultSet rs) {
         if (rs != null) {
             try {
                 rs.close();
@@ -179,7 +549,7 @@ public class DefaultSequenceDao implements SequenceDao {
         }
     }
 
-    private static void closeStatement(Statement stmt) {
+    static void closeStatement(Statement stmt) {
         if (stmt != null) {
             try {
                 stmt.close();
@@ -191,7 +561,7 @@ public class DefaultSequenceDao implements SequenceDao {
         }
     }
 
-    private static void closeConnection(Connection conn) {
+    static void closeConnection(Connection conn) {
         if (conn != null) {
             try {
                 conn.close();
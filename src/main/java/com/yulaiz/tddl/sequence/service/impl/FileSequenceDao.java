@@ -0,0 +1,494 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 本地内存映射文件存储的序列, 用于不部署数据库的单节点场景
+ * <p>
+ * 每个序列占一个固定大小的槽, 槽内有两份带版本号和 CRC32 校验和的记录, 更新时写入较旧的一份,
+ * 并且要等上一次写入同一槽的记录刷盘后才写, 写入中途崩溃最多损坏正在写的一份, 另一份一定是已刷盘的值。
+ * 启动时加载校验通过且版本较新的记录, 在内存中建立序列名到槽的索引。
+ * <p>
+ * 取区间的语义与 {@link DefaultSequenceDao} 相同, 取 [value + 1, value + step] 并把值推进 step。
+ * 值写入映射内存后等待刷盘完成才返回区间, 并发的写入合并为一次 force, 重启后不会重复发号
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "sequence.file", name = "enabled", havingValue = "true")
+public class FileSequenceDao implements SequenceDao {
+    private static final int MAGIC = 0x54445346;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 128;
+    private static final int SLOT_SIZE = RECORD_SIZE * 2;
+    /**
+     * 记录布局: version(8) + value(8) + step(4) + nameLength(2) + name(98) + checksum(8)
+     */
+    private static final int VERSION_OFFSET = 0;
+    private static final int VALUE_OFFSET = 8;
+    private static final int STEP_OFFSET = 16;
+    private static final int NAME_LENGTH_OFFSET = 20;
+    private static final int NAME_OFFSET = 22;
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - 8;
+    static final int MAX_NAME_BYTES = CHECKSUM_OFFSET - NAME_OFFSET;
+
+    /**
+     * 序列文件路径
+     */
+    @Value("${sequence.file.path:data/sequence.dat}")
+    private String path;
+    /**
+     * 文件中的槽数, 即最多保存的序列数, 文件创建后不再改变
+     */
+    @Value("${sequence.file.slots:4096}")
+    private int slotCount;
+    /**
+     * 是否在首次使用时自动创建序列, 槽不会释放, 开启后任意调用方都可以用随意的名称占满文件
+     */
+    @Value("${sequence.file.auto-create:false}")
+    private boolean autoCreate;
+    /**
+     * 自动创建的序列的步长
+     */
+    @Value("${sequence.file.default-step:1000}")
+    private int defaultStep;
+    /**
+     * 启动时创建的序列, 已存在时不做修改, 步长为 default-step
+     */
+    @Value("${sequence.file.names:}")
+    private Set<String> names;
+
+    private FileChannel channel;
+    /**
+     * 文件的独占锁, 两个实例同时打开同一个文件会各自从相同的值发号
+     */
+    private FileLock fileLock;
+    private MappedByteBuffer buffer;
+
+    /**
+     * 序列名到槽的索引
+     */
+    private final Map<String, Slot> index = new ConcurrentHashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Lock createLock = new ReentrantLock();
+    /**
+     * 存在无法恢复的槽时不再自动创建序列, 避免把丢失的序列从头开始重新发号
+     */
+    private boolean corrupted;
+
+    /**
+     * 已写入映射内存的记录数和已刷盘的记录数, 刷盘时覆盖开始前写入的全部记录
+     */
+    private final AtomicLong written = new AtomicLong();
+    private long durable;
+    private boolean flushing;
+    private final Lock commitLock = new ReentrantLock();
+    private final Condition committed = commitLock.newCondition();
+
+    public FileSequenceDao() {
+    }
+
+    public FileSequenceDao(Path path, int slotCount, boolean autoCreate, int defaultStep) throws IOException {
+        this.path = path.toString();
+        this.slotCount = slotCount;
+        this.autoCreate = autoCreate;
+        this.defaultStep = defaultStep;
+        open();
+    }
+
+    @PostConstruct
+    public void init() throws IOException, SequenceException {
+        open();
+        if (names != null) {
+            for (String name : names) {
+                if (create(name, 0, defaultStep)) {
+                    log.info("Created sequence {} in {}", name, path);
+                }
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        Path file = Paths.get(path);
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException("Sequence file " + file + " is locked by another instance");
+        }
+        int existingSlots = readExistingSlotCount();
+        if (existingSlots > 0 && existingSlots != slotCount) {
+            log.warn("Sequence file {} has {} slots, ignore configured {}", file, existingSlots, slotCount);
+        }
+        if (existingSlots > 0) {
+            slotCount = existingSlots;
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+        if (existingSlots <= 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slotCount);
+            buffer.force();
+        }
+        load(file);
+    }
+
+    private int readExistingSlotCount() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return 0;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a sequence file or unsupported version");
+        }
+        return header.getInt(8);
+    }
+
+    private void load(Path file) {
+        int corruptedSlots = 0;
+        for (int i = 0; i < slotCount; i++) {
+            int first = recordOffset(i, 0);
+            int second = recordOffset(i, 1);
+            boolean firstValid = isValid(first);
+            boolean secondValid = isValid(second);
+            if (!firstValid && !secondValid) {
+                if (isEmpty(first) && isEmpty(second)) {
+                    freeSlots.add(i);
+                } else {
+                    // 两份记录都损坏, 该槽保留不再使用
+                    corruptedSlots++;
+                }
+                continue;
+            }
+            int current = !secondValid || (firstValid
+                    && buffer.getLong(first + VERSION_OFFSET) > buffer.getLong(second + VERSION_OFFSET)) ? 0 : 1;
+            int offset = recordOffset(i, current);
+            index.put(new String(readName(offset), StandardCharsets.UTF_8), new Slot(i, current,
+                    buffer.getLong(offset + VERSION_OFFSET), buffer.getLong(offset + VALUE_OFFSET),
+                    buffer.getInt(offset + STEP_OFFSET)));
+        }
+        if (corruptedSlots > 0) {
+            corrupted = true;
+            log.error("Sequence file {} has {} corrupted slots, auto create is disabled", file, corruptedSlots);
+        }
+        log.info("Loaded {} sequences from {}", index.size(), file);
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        commitLock.lock();
+        try {
+            buffer.force();
+            fileLock.release();
+            channel.close();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 取得下一个可用的序列区间
+     *
+     * @param sequenceName 序列名称
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    /**
+     * 取得下一个指定大小的序列区间, 忽略文件中的步长
+     *
+     * @param sequenceName  序列名称
+     * @param requestedSize 区间大小, 小于等于 0 时使用文件中的步长
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        if (sequenceName == null) {
+            throw new IllegalArgumentException("序列名称不能为空");
+        }
+        SequenceRange range = reserve(slot(sequenceName), requestedSize);
+        awaitDurable(written.get());
+        return range;
+    }
+
+    /**
+     * 一次取得多个序列的下一个指定大小的区间, 全部写入后只等待一次刷盘
+     * <p>
+     * 任一序列不存在时整批失败, 此时还没有预留任何区间
+     *
+     * @param requestedSizes 序列名称到区间大小的映射, 大小小于等于 0 时使用文件中的步长
+     * @return 序列名称到区间的映射
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        Map<String, Slot> slots = new LinkedHashMap<>();
+        for (String sequenceName : requestedSizes.keySet()) {
+            slots.put(sequenceName, slot(sequenceName));
+        }
+        Map<String, SequenceRange> ranges = new LinkedHashMap<>();
+        for (Map.Entry<String, Slot> entry : slots.entrySet()) {
+            ranges.put(entry.getKey(), reserve(entry.getValue(), requestedSizes.get(entry.getKey())));
+        }
+        if (!ranges.isEmpty()) {
+            awaitDurable(written.get());
+        }
+        return ranges;
+    }
+
+    @Override
+    public List<String> listSequenceNames() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    /**
+     * 新建序列, 已存在时不做修改
+     *
+     * @param sequenceName 序列名称
+     * @param value        初始值, 第一段区间从 value + 1 开始
+     * @param step         步长
+     * @return 是否新建
+     * @throws SequenceException 序列名过长或没有空闲槽
+     */
+    public boolean create(String sequenceName, long value, int step) throws SequenceException {
+        if (value < 0 || step <= 0) {
+            throw new SequenceException("Sequence value cannot be less than zero and step must be greater than zero, "
+                    + "value = " + value + ", step = " + step);
+        }
+        boolean created = createSlot(sequenceName, value, step) != null;
+        if (created) {
+            awaitDurable(written.get());
+        }
+        return created;
+    }
+
+    private Slot slot(String sequenceName) throws SequenceException {
+        Slot slot = index.get(sequenceName);
+        if (slot != null) {
+            return slot;
+        }
+        if (!autoCreate || corrupted) {
+            throw new SequenceNotFoundException("Sequence does not exist, please check sequence file " + path);
+        }
+        createSlot(sequenceName, 0, defaultStep);
+        return index.get(sequenceName);
+    }
+
+    /**
+     * @return 新建的槽, 已存在时返回空
+     */
+    private Slot createSlot(String sequenceName, long value, int step) throws SequenceException {
+        byte[] name = sequenceName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new SequenceException("Sequence name is too long, max bytes = " + MAX_NAME_BYTES);
+        }
+        createLock.lock();
+        try {
+            if (index.containsKey(sequenceName)) {
+                return null;
+            }
+            Integer slotIndex = freeSlots.poll();
+            if (slotIndex == null) {
+                throw new SequenceException("Sequence file is full, slots = " + slotCount);
+            }
+            Slot slot = new Slot(slotIndex, 1, 0, value, step);
+            slot.lock.lock();
+            try {
+                write(slot, name, value, step);
+            } finally {
+                slot.lock.unlock();
+            }
+            index.put(sequenceName, slot);
+            return slot;
+        } finally {
+            createLock.unlock();
+        }
+    }
+
+    /**
+     * 在映射内存中推进槽的值, 调用方需等待刷盘后才能使用返回的区间
+     */
+    private SequenceRange reserve(Slot slot, int requestedSize) throws SequenceException {
+        slot.lock.lock();
+        try {
+            long oldValue = slot.value;
+            int step = requestedSize > 0 ? requestedSize : slot.step;
+            if (oldValue > Long.MAX_VALUE - DefaultSequenceDao.DELTA) {
+                throw new SequenceException("Sequence value overflow, value = " + oldValue
+                        + ", please check sequence file " + path);
+            }
+            byte[] name = readName(recordOffset(slot.index, slot.current));
+            write(slot, name, oldValue + step, slot.step);
+            return new SequenceRange(oldValue + 1, oldValue + step);
+        } finally {
+            slot.lock.unlock();
+        }
+    }
+
+    /**
+     * 写入较旧的一份记录并切换为当前记录, 需持有槽的锁
+     */
+    private void write(Slot slot, byte[] name, long value, int step) throws SequenceException {
+        // 要覆盖的是上次刷盘的那份记录, 当前记录未刷盘时先等待, 否则崩溃后两份都可能不可用或回退到更早的值
+        awaitDurable(slot.pendingWrite);
+        int target = 1 - slot.current;
+        int offset = recordOffset(slot.index, target);
+        long version = slot.version + 1;
+        buffer.putLong(offset + VERSION_OFFSET, version);
+        buffer.putLong(offset + VALUE_OFFSET, value);
+        buffer.putInt(offset + STEP_OFFSET, step);
+        buffer.putShort(offset + NAME_LENGTH_OFFSET, (short) name.length);
+        buffer.put(offset + NAME_OFFSET, new byte[MAX_NAME_BYTES]);
+        buffer.put(offset + NAME_OFFSET, name);
+        buffer.putLong(offset + CHECKSUM_OFFSET, checksum(offset));
+        slot.current = target;
+        slot.version = version;
+        slot.value = value;
+        slot.pendingWrite = written.incrementAndGet();
+    }
+
+    /**
+     * 等待第 target 条写入刷盘, 同一时刻只有一个线程执行 force, 其余线程等待并由下一次 force 一起刷盘
+     */
+    private void awaitDurable(long target) throws SequenceException {
+        commitLock.lock();
+        try {
+            while (durable < target) {
+                if (flushing) {
+                    committed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                long flushTarget = written.get();
+                boolean flushed = false;
+                commitLock.unlock();
+                try {
+                    force();
+                    flushed = true;
+                } catch (UncheckedIOException e) {
+                    throw new SequenceUnavailableException("Failed to flush sequence file " + path, e);
+                } finally {
+                    commitLock.lock();
+                    if (flushed) {
+                        durable = Math.max(durable, flushTarget);
+                    }
+                    flushing = false;
+                    committed.signalAll();
+                }
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * 把映射内存刷到磁盘
+     */
+    protected void force() {
+        buffer.force();
+    }
+
+    private boolean isValid(int offset) {
+        return buffer.getLong(offset + VERSION_OFFSET) > 0
+                && buffer.getLong(offset + CHECKSUM_OFFSET) == checksum(offset);
+    }
+
+    private boolean isEmpty(int offset) {
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            if (buffer.getLong(offset + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readName(int offset) {
+        byte[] name = new byte[buffer.getShort(offset + NAME_LENGTH_OFFSET)];
+        buffer.get(offset + NAME_OFFSET, name);
+        return name;
+    }
+
+    private long checksum(int offset) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.slice(offset, CHECKSUM_OFFSET));
+        return crc32.getValue();
+    }
+
+    private static int recordOffset(int index, int copy) {
+        return HEADER_SIZE + index * SLOT_SIZE + copy * RECORD_SIZE;
+    }
+
+    private static class Slot {
+        private final int index;
+        private final Lock lock = new ReentrantLock();
+        /**
+         * 当前记录是第几份, 0 或 1
+         */
+        private int current;
+        private long version;
+        private long value;
+        private final int step;
+        /**
+         * 最后一次写入该槽的序号, 刷盘序号达到该值前不能再写另一份记录
+         */
+        private long pendingWrite;
+
+        private Slot(int index, int current, long version, long value, int step) {
+            this.index = index;
+            this.current = current;
+            this.version = version;
+            this.value = value;
+            this.step = step;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
+import com.yulaiz.tddl.sequence.exception.SequenceRetryExhaustedException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 多数据源序列, 参考 TDDL 的 GroupSequenceDao
+ * <p>
+ * 同一个序列在 N 个库中各有一行, 第 i 个库的值始终满足 value % (N * step) == i * step,
+ * 每次从库中取 [value + 1, value + step], 并把值推进 N * step, 各库区间交错且互不重叠。
+ * 每次随机或轮询选择一个库, 出错的库在冷却时间内被跳过。各库的步长必须相同, 否则区间会重叠,
+ * 首次使用和读到不同的步长时检查全部可用的库, 不一致时拒绝取区间
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "sequence.group", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
+public class GroupSequenceDao implements SequenceDao {
+    private final GroupSequenceProperties properties;
+    private final SequenceMetrics sequenceMetrics;
+    /**
+     * 重试次数
+     */
+    private static final int DEFAULT_RETRY_TIMES = 150;
+    /**
+     * 序列所在的表名
+     */
+    @Value("${sequence.structure.table}")
+    private String DEFAULT_TABLE_NAME;
+    /**
+     * 存储序列名称的列名
+     */
+    @Value("${sequence.structure.name}")
+    private String DEFAULT_NAME_COLUMN_NAME;
+    /**
+     * 存储序列步长的列名
+     */
+    @Value("${sequence.structure.step}")
+    private String DEFAULT_STEP_COLUMN_STEP;
+    /**
+     * 存储序列值的列名
+     */
+    @Value("${sequence.structure.value}")
+    private String DEFAULT_VALUE_COLUMN_NAME;
+    /**
+     * 存储序列最后更新时间的列名
+     */
+    @Value("${sequence.structure.modified}")
+    private String DEFAULT_GMT_MODIFIED_COLUMN_NAME;
+
+    private static final String ROUND_ROBIN = "round-robin";
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    /**
+     * 每个库恢复可用的时间点, 单位: 毫秒
+     */
+    private AtomicLongArray unhealthyUntil;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    /**
+     * 已确认在全部可用的库中一致的步长
+     */
+    private final Map<String, Integer> verifiedSteps = new ConcurrentHashMap<>();
+
+    private String selectSql;
+    private String updateSql;
+
+    @PostConstruct
+    public void init() {
+        if (properties.getDatasources().isEmpty()) {
+            throw new IllegalStateException("sequence.group.datasources 不能为空");
+        }
+        for (GroupSequenceProperties.DataSourceConfig config : properties.getDatasources()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(config.getUrl());
+            dataSource.setUsername(config.getUsername());
+            dataSource.setPassword(config.getPassword());
+            if (config.getDriverClassName() != null) {
+                dataSource.setDriverClassName(config.getDriverClassName());
+            }
+            dataSource.setMaximumPoolSize(config.getMaximumPoolSize());
+            dataSources.add(dataSource);
+        }
+        unhealthyUntil = new AtomicLongArray(dataSources.size());
+        selectSql = "select " + DEFAULT_VALUE_COLUMN_NAME
+                + ", " + DEFAULT_STEP_COLUMN_STEP +
+                " from " + DEFAULT_TABLE_NAME +
+                " where " + DEFAULT_NAME_COLUMN_NAME + " = ?";
+        updateSql = "update " + DEFAULT_TABLE_NAME +
+                " set " + DEFAULT_VALUE_COLUMN_NAME + " = ?" +
+                ", " + DEFAULT_GMT_MODIFIED_COLUMN_NAME + " = ? " +
+                "where " + DEFAULT_NAME_COLUMN_NAME + " = ? " +
+                "and " + DEFAULT_VALUE_COLUMN_NAME + " = ?";
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (HikariDataSource dataSource : dataSources) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * 取得下一个可用的序列区间
+     *
+     * @param sequenceName 序列名称
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        if (sequenceName == null) {
+            throw new IllegalArgumentException("序列名称不能为空");
+        }
+        SQLException lastException = null;
+        // 每次调用中每个库最多失败一次, 乐观更新冲突不计入
+        boolean[] failed = new boolean[dataSources.size()];
+        for (int i = 0; i < DEFAULT_RETRY_TIMES + 1; ++i) {
+            int index = selectIndex(failed);
+            if (index < 0) {
+                throw new SequenceUnavailableException("All sequence datasources failed", lastException);
+            }
+            try {
+                SequenceRange range = nextRange(index, sequenceName);
+                if (range != null) {
+                    if (i > 0) {
+                        sequenceMetrics.meters(sequenceName).retried(i);
+                    }
+                    return range;
+                }
+            } catch (SQLException e) {
+                lastException = e;
+                failed[index] = true;
+                unhealthyUntil.set(index, System.currentTimeMillis() + properties.getCooldownMillis());
+                log.warn("Sequence datasource {} is unavailable, skip it for {} ms",
+                        index, properties.getCooldownMillis(), e);
+            }
+        }
+        sequenceMetrics.meters(sequenceName).retried(DEFAULT_RETRY_TIMES);
+        throw new SequenceRetryExhaustedException(DEFAULT_RETRY_TIMES);
+    }
+
+    /**
+     * 多数据源下每个库的步长必须固定, 忽略指定的区间大小
+     *
+     * @param sequenceName  序列名称
+     * @param requestedSize 区间大小, 不生效
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        return nextRange(sequenceName);
+    }
+
+    /**
+     * 列出序列表中的全部序列名称, 从第一个可用的库读取
+     *
+     * @return 序列名称
+     * @throws SequenceException 获取失败
+     */
+    @Override
+    public List<String> listSequenceNames() throws SequenceException {
+        SequenceException lastException = null;
+        for (HikariDataSource dataSource : dataSources) {
+            try {
+                return DefaultSequenceDao.listSequenceNames(dataSource, DEFAULT_TABLE_NAME, DEFAULT_NAME_COLUMN_NAME);
+            } catch (SequenceException e) {
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * 从第 index 个库取一段区间
+     *
+     * @return 区间, 乐观更新冲突时返回空
+     */
+    private SequenceRange nextRange(int index, String sequenceName) throws SQLException, SequenceException {
+        int count = dataSources.size();
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSources.get(index).getConnection();
+            long oldValue;
+            int step;
+            try {
+                stmt = conn.prepareStatement(selectSql);
+                stmt.setString(1, sequenceName);
+                rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    String message = "Sequence does not exist, " +
+                            "please check table " + DEFAULT_TABLE_NAME + " in datasource " + index;
+                    throw new SequenceNotFoundException(message);
+                }
+                oldValue = rs.getLong(1);
+                step = rs.getInt(2);
+            } finally {
+                DefaultSequenceDao.closeResultSet(rs);
+                rs = null;
+                DefaultSequenceDao.closeStatement(stmt);
+                stmt = null;
+            }
+            if (oldValue < 0 || step <= 0) {
+                String message = "Sequence value cannot be less than zero and step must be greater than zero, " +
+                        "value = " + oldValue + ", step = " + step + ", " +
+                        "please check table " + DEFAULT_TABLE_NAME + " in datasource " + index;
+                throw new SequenceException(message);
+            }
+            Integer verifiedStep = verifiedSteps.get(sequenceName);
+            if (verifiedStep == null || verifiedStep != step) {
+                verifyStep(sequenceName, index, step);
+            }
+            long outStep = (long) step * count;
+            long offset = (long) step * index;
+            long startValue = oldValue;
+            if (oldValue % outStep != offset) {
+                if (!properties.isAdjust()) {
+                    String message = "Sequence value is not aligned, " +
+                            "value = " + oldValue + ", expected value % " + outStep + " = " + offset + ", " +
+                            "please check table " + DEFAULT_TABLE_NAME + " in datasource " + index;
+                    throw new SequenceException(message);
+                }
+                startValue = oldValue - oldValue % outStep + offset;
+                if (startValue < oldValue) {
+                    startValue += outStep;
+                }
+            }
+            if (startValue > Long.MAX_VALUE - DefaultSequenceDao.DELTA) {
+                String message = "Sequence value overflow, " +
+                        "value = " + startValue + ", " +
+                        "please check table " + DEFAULT_TABLE_NAME + " in datasource " + index;
+                throw new SequenceException(message);
+            }
+            stmt = conn.prepareStatement(updateSql);
+            stmt.setLong(1, startValue + outStep);
+            stmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            stmt.setString(3, sequenceName);
+            stmt.setLong(4, oldValue);
+            if (stmt.executeUpdate() == 0) {
+                return null;
+            }
+            return new SequenceRange(startValue + 1, startValue + step);
+        } finally {
+            DefaultSequenceDao.closeResultSet(rs);
+            DefaultSequenceDao.closeStatement(stmt);
+            DefaultSequenceDao.closeConnection(conn);
+        }
+    }
+
+    /**
+     * 检查全部可用的库中该序列的步长与 step 一致, 一致时记录下来, 不可用的库跳过
+     */
+    private void verifyStep(String sequenceName, int index, int step) throws SequenceException {
+        for (int i = 0; i < dataSources.size(); i++) {
+            if (i == index) {
+                continue;
+            }
+            try (Connection conn = dataSources.get(i).getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                stmt.setString(1, sequenceName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next() && rs.getInt(2) != step) {
+                        verifiedSteps.remove(sequenceName);
+                        String message = "Sequence step differs between datasources, " +
+                                "step = " + step + " in datasource " + index + ", " +
+                                "step = " + rs.getInt(2) + " in datasource " + i + ", " +
+                                "please check table " + DEFAULT_TABLE_NAME;
+                        throw new SequenceException(message);
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Cannot verify sequence step in datasource {}", i, e);
+            }
+        }
+        verifiedSteps.put(sequenceName, step);
+    }
+
+    /**
+     * 选择一个库, 跳过冷却中和本次调用已失败的库
+     *
+     * @return 库的下标, 全部不可用时返回 -1
+     */
+    private int selectIndex(boolean[] failed) {
+        int count = dataSources.size();
+        int start = ROUND_ROBIN.equalsIgnoreCase(properties.getSelector())
+                ? Math.floorMod(roundRobin.getAndIncrement(), count)
+                : ThreadLocalRandom.current().nextInt(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % count;
+            if (!failed[index] && unhealthyUntil.get(index) <= now) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,44 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多数据源序列配置
+ */
+@Data
+@ConfigurationProperties(prefix = "sequence.group")
+public class GroupSequenceProperties {
+    /**
+     * 是否使用多数据源序列
+     */
+    private boolean enabled;
+    /**
+     * 数据源列表, 顺序决定每个库的区间偏移, 上线后不能调整顺序
+     */
+    private List<DataSourceConfig> datasources = new ArrayList<>();
+    /**
+     * 数据源选择方式: random / round-robin
+     */
+    private String selector = "random";
+    /**
+     * 数据源出错后被跳过的时长, 单位: 毫秒
+     */
+    private long cooldownMillis = 30000;
+    /**
+     * 库中的值未按区间对齐时是否自动调整, 关闭时直接报错
+     */
+    private boolean adjust = true;
+
+    @Data
+    public static class DataSourceConfig {
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName;
+        private int maximumPoolSize = 10;
+    }
+}
@@ -0,0 +1,26 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+/**
+ * H2, 不支持 update ... returning, 使用等价的 select ... from final table (update ...) 一次往返预留区间
+ */
+public class H2SequenceDialect extends ReturningSequenceDialect {
+
+    public H2SequenceDialect(SequenceTable table) {
+        super(table);
+    }
+
+    @Override
+    protected String returning(SequenceTable table, String updateSql) {
+        return "select " + table.valueColumn() + ", " + table.stepColumn() + " from final table (" + updateSql + ")";
+    }
+
+    @Override
+    public String getName() {
+        return "h2";
+    }
+
+    @Override
+    public boolean supports(String databaseProductName) {
+        return databaseProductName.contains("h2");
+    }
+}
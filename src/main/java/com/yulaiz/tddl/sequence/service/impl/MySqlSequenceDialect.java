@@ -0,0 +1,71 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * MySQL, update ... set value = last_insert_id(value + step) 原子推进, 新值在同一连接上通过 last_insert_id() 取回,
+ * 共两次往返, 取不回步长, 调用方需传入区间大小
+ */
+public class MySqlSequenceDialect implements SequenceDialect {
+
+    private static final String LAST_INSERT_ID_SQL = "select last_insert_id()";
+
+    /**
+     * 参数: size, modified, name, maxValue
+     */
+    private final String updateSql;
+
+    public MySqlSequenceDialect(SequenceTable table) {
+        this.updateSql = "update " + table.table() +
+                " set " + table.valueColumn() + " = last_insert_id(" + table.valueColumn() + " + ?)" +
+                ", " + table.modifiedColumn() + " = ? " +
+                "where " + table.nameColumn() + " = ? " +
+                "and " + table.valueColumn() + " >= 0 " +
+                "and " + table.valueColumn() + " <= ?";
+    }
+
+    @Override
+    public String getName() {
+        return "mysql";
+    }
+
+    @Override
+    public boolean supports(String databaseProductName) {
+        return databaseProductName.contains("mysql") || databaseProductName.contains("mariadb");
+    }
+
+    @Override
+    public boolean returnsStep() {
+        return false;
+    }
+
+    @Override
+    public SequenceRange reserve(StatementPreparer preparer, String sequenceName, int size)
+            throws SQLException, SequenceException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("MySQL dialect requires a positive size");
+        }
+        PreparedStatement updateStmt = preparer.prepare(updateSql);
+        updateStmt.setLong(1, size);
+        updateStmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+        updateStmt.setString(3, sequenceName);
+        updateStmt.setLong(4, Long.MAX_VALUE - DefaultSequenceDao.DELTA);
+        if (updateStmt.executeUpdate() == 0) {
+            throw new SequenceException("Sequence does not exist or value is out of range, " +
+                    "sequenceName = " + sequenceName);
+        }
+        try (ResultSet rs = preparer.prepare(LAST_INSERT_ID_SQL).executeQuery()) {
+            if (!rs.next()) {
+                throw new SequenceException("Cannot read last_insert_id after reserving range");
+            }
+            long newValue = rs.getLong(1);
+            return new SequenceRange(newValue - size + 1, newValue);
+        }
+    }
+}
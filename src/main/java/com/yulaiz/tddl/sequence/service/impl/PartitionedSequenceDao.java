@@ -0,0 +1,294 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
+import com.yulaiz.tddl.sequence.exception.SequenceRetryExhaustedException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 分区序列, 同一个逻辑序列在序列表中有 K 行, 行名为 序列名#分区号
+ * <p>
+ * 与 {@link GroupSequenceDao} 相同, 第 i 行的值始终满足 value % (K * step) == i * step,
+ * 每次取 [value + 1, value + step] 并把值推进 K * step, 各行区间交错且互不重叠。
+ * 每个节点按 nodeId 固定一个主分区, 只在主分区乐观更新冲突时才依次尝试其他分区,
+ * 多个节点同时补充同一序列时各自更新不同的行, 不再在同一行上冲突重试。
+ * 各行的步长必须相同, 否则区间会重叠, 每次补充时读取全部分区行并校验步长。
+ * 只对 sequence.partition.names 中的序列生效, 其余序列仍由 {@link DefaultSequenceDao} 处理
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "sequence.partition", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
+public class PartitionedSequenceDao implements SequenceDao {
+    private final DataSource dataSource;
+    private final DefaultSequenceDao defaultSequenceDao;
+    private final SequenceMetrics sequenceMetrics;
+    /**
+     * 重试次数
+     */
+    private static final int DEFAULT_RETRY_TIMES = 150;
+    /**
+     * 分区行名中序列名与分区号的分隔符
+     */
+    static final String PARTITION_SEPARATOR = "#";
+    /**
+     * 序列所在的表名
+     */
+    @Value("${sequence.structure.table}")
+    private String DEFAULT_TABLE_NAME;
+    /**
+     * 存储序列名称的列名
+     */
+    @Value("${sequence.structure.name}")
+    private String DEFAULT_NAME_COLUMN_NAME;
+    /**
+     * 存储序列步长的列名
+     */
+    @Value("${sequence.structure.step}")
+    private String DEFAULT_STEP_COLUMN_STEP;
+    /**
+     * 存储序列值的列名
+     */
+    @Value("${sequence.structure.value}")
+    private String DEFAULT_VALUE_COLUMN_NAME;
+    /**
+     * 存储序列最后更新时间的列名
+     */
+    @Value("${sequence.structure.modified}")
+    private String DEFAULT_GMT_MODIFIED_COLUMN_NAME;
+
+    /**
+     * 使用分区的序列名
+     */
+    @Value("${sequence.partition.names:}")
+    private Set<String> partitionedNames;
+    /**
+     * 每个序列的分区数, 即序列表中的行数
+     */
+    @Value("${sequence.partition.count:4}")
+    private int partitionCount;
+    /**
+     * 节点编号, 主分区为 nodeId % count, 小于 0 时使用主机名的哈希
+     */
+    @Value("${sequence.partition.node-id:-1}")
+    private int nodeId;
+
+    private int homePartition;
+
+    private String selectSql;
+    private String updateSql;
+
+    @PostConstruct
+    public void init() {
+        if (partitionCount <= 0) {
+            throw new IllegalStateException("sequence.partition.count 必须大于 0");
+        }
+        int node = nodeId >= 0 ? nodeId : hostNameHash();
+        homePartition = Math.floorMod(node, partitionCount);
+        log.info("Partitioned sequences {}, partitions = {}, home partition = {}",
+                partitionedNames, partitionCount, homePartition);
+        selectSql = "select " + DEFAULT_NAME_COLUMN_NAME +
+                ", " + DEFAULT_VALUE_COLUMN_NAME +
+                ", " + DEFAULT_STEP_COLUMN_STEP +
+                " from " + DEFAULT_TABLE_NAME +
+                " where " + DEFAULT_NAME_COLUMN_NAME + " in (" +
+                String.join(", ", Collections.nCopies(partitionCount, "?")) + ")";
+        updateSql = "update " + DEFAULT_TABLE_NAME +
+                " set " + DEFAULT_VALUE_COLUMN_NAME + " = ?" +
+                ", " + DEFAULT_GMT_MODIFIED_COLUMN_NAME + " = ? " +
+                "where " + DEFAULT_NAME_COLUMN_NAME + " = ? " +
+                "and " + DEFAULT_VALUE_COLUMN_NAME + " = ?";
+    }
+
+    /**
+     * 取得下一个可用的序列区间
+     *
+     * @param sequenceName 序列名称
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    /**
+     * 分区序列每行的步长必须固定, 忽略指定的区间大小
+     *
+     * @param sequenceName  序列名称
+     * @param requestedSize 区间大小, 只对未分区的序列生效
+     * @return 返回下一个可用的序列区间
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        if (sequenceName == null) {
+            throw new IllegalArgumentException("序列名称不能为空");
+        }
+        if (!partitionedNames.contains(sequenceName)) {
+            return defaultSequenceDao.nextRange(sequenceName, requestedSize);
+        }
+        for (int i = 0; i < DEFAULT_RETRY_TIMES + 1; ++i) {
+            // 先取主分区, 冲突时依次尝试下一个分区
+            int partition = (homePartition + i) % partitionCount;
+            SequenceRange range;
+            try {
+                range = nextPartitionRange(sequenceName, partition);
+            } catch (SQLException e) {
+                throw new SequenceUnavailableException(e);
+            }
+            if (range != null) {
+                if (i > 0) {
+                    sequenceMetrics.meters(sequenceName).retried(i);
+                }
+                return range;
+            }
+        }
+        sequenceMetrics.meters(sequenceName).retried(DEFAULT_RETRY_TIMES);
+        throw new SequenceRetryExhaustedException(DEFAULT_RETRY_TIMES);
+    }
+
+    /**
+     * 列出序列表中的全部序列名称, 分区行合并为逻辑序列名
+     *
+     * @return 序列名称
+     * @throws SequenceException 获取失败
+     */
+    @Override
+    public List<String> listSequenceNames() throws SequenceException {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : defaultSequenceDao.listSequenceNames()) {
+            int index = name.lastIndexOf(PARTITION_SEPARATOR);
+            if (index > 0 && partitionedNames.contains(name.substring(0, index))) {
+                names.add(name.substring(0, index));
+            } else {
+                names.add(name);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * 从第 partition 个分区取一段区间, 值未对齐时向上对齐到该分区,
+     * 同时读取其余分区行, 步长与其不一致时拒绝
+     *
+     * @return 区间, 乐观更新冲突时返回空
+     */
+    private SequenceRange nextPartitionRange(String sequenceName, int partition) throws SQLException, SequenceException {
+        String rowName = sequenceName + PARTITION_SEPARATOR + partition;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            long oldValue = -1;
+            int step = 0;
+            int rows = 0;
+            try {
+                stmt = conn.prepareStatement(selectSql);
+                for (int i = 0; i < partitionCount; i++) {
+                    stmt.setString(i + 1, sequenceName + PARTITION_SEPARATOR + i);
+                }
+                rs = stmt.executeQuery();
+                while (rs.next()) {
+                    int rowStep = rs.getInt(3);
+                    if (rows++ > 0 && rowStep != step) {
+                        String message = "Sequence step differs between partitions, " +
+                                "steps = " + step + ", " + rowStep + ", " +
+                                "please check " + sequenceName + " in table " + DEFAULT_TABLE_NAME;
+                        throw new SequenceException(message);
+                    }
+                    step = rowStep;
+                    if (rowName.equals(rs.getString(1))) {
+                        oldValue = rs.getLong(2);
+                    }
+                }
+                if (rows == 0) {
+                    String message = "Sequence does not exist, name = " + sequenceName + ", " +
+                            "please check table " + DEFAULT_TABLE_NAME;
+                    throw new SequenceNotFoundException(message);
+                }
+                if (rows < partitionCount) {
+                    String message = "Sequence partition does not exist, name = " + sequenceName + ", " +
+                            "expected " + partitionCount + " partitions, found " + rows + ", " +
+                            "please check table " + DEFAULT_TABLE_NAME;
+                    throw new SequenceException(message);
+                }
+            } finally {
+                DefaultSequenceDao.closeResultSet(rs);
+                rs = null;
+                DefaultSequenceDao.closeStatement(stmt);
+                stmt = null;
+            }
+            if (oldValue < 0 || step <= 0) {
+                String message = "Sequence value cannot be less than zero and step must be greater than zero, " +
+                        "value = " + oldValue + ", step = " + step + ", " +
+                        "please check " + rowName + " in table " + DEFAULT_TABLE_NAME;
+                throw new SequenceException(message);
+            }
+            long outStep = (long) step * partitionCount;
+            long offset = (long) step * partition;
+            long startValue = oldValue;
+            if (oldValue % outStep != offset) {
+                startValue = oldValue - oldValue % outStep + offset;
+                if (startValue < oldValue) {
+                    startValue += outStep;
+                }
+            }
+            if (startValue > Long.MAX_VALUE - DefaultSequenceDao.DELTA) {
+                String message = "Sequence value overflow, " +
+                        "value = " + startValue + ", " +
+                        "please check " + rowName + " in table " + DEFAULT_TABLE_NAME;
+                throw new SequenceException(message);
+            }
+            stmt = conn.prepareStatement(updateSql);
+            stmt.setLong(1, startValue + outStep);
+            stmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            stmt.setString(3, rowName);
+            stmt.setLong(4, oldValue);
+            if (stmt.executeUpdate() == 0) {
+                return null;
+            }
+            return new SequenceRange(startValue + 1, startValue + step);
+        } finally {
+            DefaultSequenceDao.closeResultSet(rs);
+            DefaultSequenceDao.closeStatement(stmt);
+            DefaultSequenceDao.closeConnection(conn);
+        }
+    }
+
+    private static int hostNameHash() {
+        try {
+            return InetAddress.getLocalHost().getHostName().hashCode();
+        } catch (UnknownHostException e) {
+            log.warn("Cannot resolve host name, use partition 0 as home partition", e);
+            return 0;
+        }
+    }
+}
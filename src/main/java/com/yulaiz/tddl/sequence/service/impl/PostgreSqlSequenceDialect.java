@@ -0,0 +1,26 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+/**
+ * PostgreSQL, update ... returning 一次往返预留区间
+ */
+public class PostgreSqlSequenceDialect extends ReturningSequenceDialect {
+
+    public PostgreSqlSequenceDialect(SequenceTable table) {
+        super(table);
+    }
+
+    @Override
+    protected String returning(SequenceTable table, String updateSql) {
+        return updateSql + " returning " + table.valueColumn() + ", " + table.stepColumn();
+    }
+
+    @Override
+    public String getName() {
+        return "postgresql";
+    }
+
+    @Override
+    public boolean supports(String databaseProductName) {
+        return databaseProductName.contains("postgresql");
+    }
+}
@@ -0,0 +1,266 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 本地预留区间日志, 使用内存映射文件保存已从数据库分配但尚未使用的区间
+ * <p>
+ * 文件由固定大小的槽组成, 每个槽保存一段区间和 CRC32 校验和。写入区间后立即刷盘,
+ * 取出区间时先清除槽并刷盘再返回, 进程重启后只会加载未被取出且校验通过的区间, 不会重复发号
+ */
+@Slf4j
+public class RangeJournal implements Closeable {
+    private static final int MAGIC = 0x54445351;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 128;
+    /**
+     * 槽内布局: state(4) + min(8) + max(8) + nameLength(2) + name(98) + checksum(8)
+     */
+    private static final int STATE_OFFSET = 0;
+    private static final int MIN_OFFSET = 4;
+    private static final int MAX_OFFSET = 12;
+    private static final int NAME_LENGTH_OFFSET = 20;
+    private static final int NAME_OFFSET = 22;
+    private static final int CHECKSUM_OFFSET = SLOT_SIZE - 8;
+    static final int MAX_NAME_BYTES = CHECKSUM_OFFSET - NAME_OFFSET;
+
+    private static final int EMPTY = 0;
+    private static final int RESERVED = 1;
+
+    private final FileChannel channel;
+    /**
+     * 日志文件的独占锁, 两个进程共用一个日志会取出同一段预留区间
+     */
+    private final FileLock fileLock;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+
+    private final Lock lock = new ReentrantLock();
+    /**
+     * 每个序列已预留的区间, 按写入顺序取出
+     */
+    private final Map<String, Deque<Slot>> reserved = new HashMap<>();
+    private final TreeSet<Integer> freeSlots = new TreeSet<>();
+
+    public RangeJournal(Path path, int slotCount) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fileLock = tryLock(channel);
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException("Range journal " + path + " is locked by another instance");
+        }
+        int existingSlots = readExistingSlotCount();
+        if (existingSlots > 0 && existingSlots != slotCount) {
+            log.warn("Range journal {} has {} slots, ignore configured {}", path, existingSlots, slotCount);
+        }
+        this.slotCount = existingSlots > 0 ? existingSlots : slotCount;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.slotCount * SLOT_SIZE);
+        if (existingSlots <= 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, this.slotCount);
+            buffer.force();
+        }
+        load(path);
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private int readExistingSlotCount() throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return 0;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Not a range journal or unsupported version");
+        }
+        return header.getInt(8);
+    }
+
+    private void load(Path path) {
+        int loaded = 0;
+        int corrupted = 0;
+        for (int i = 0; i < slotCount; i++) {
+            int offset = slotOffset(i);
+            int state = buffer.getInt(offset + STATE_OFFSET);
+            if (state == EMPTY) {
+                freeSlots.add(i);
+                continue;
+            }
+            if (state != RESERVED || buffer.getLong(offset + CHECKSUM_OFFSET) != checksum(offset)) {
+                // 写入中途崩溃的槽, 其中的区间视为作废
+                corrupted++;
+                clear(i);
+                freeSlots.add(i);
+                continue;
+            }
+            byte[] name = new byte[buffer.getShort(offset + NAME_LENGTH_OFFSET)];
+            buffer.get(offset + NAME_OFFSET, name);
+            Slot slot = new Slot(i, buffer.getLong(offset + MIN_OFFSET), buffer.getLong(offset + MAX_OFFSET));
+            reserved.computeIfAbsent(new String(name, StandardCharsets.UTF_8), k -> new ArrayDeque<>()).add(slot);
+            loaded++;
+        }
+        if (corrupted > 0) {
+            buffer.force();
+        }
+        log.info("Loaded {} reserved ranges from {}, discarded {} corrupted slots", loaded, path, corrupted);
+    }
+
+    /**
+     * 序列已预留的区间数
+     */
+    public int count(String sequenceName) {
+        lock.lock();
+        try {
+            Deque<Slot> slots = reserved.get(sequenceName);
+            return slots == null ? 0 : slots.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 是否还能保存该序列的预留区间
+     */
+    public boolean accepts(String sequenceName) {
+        if (sequenceName.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+            return false;
+        }
+        lock.lock();
+        try {
+            return !freeSlots.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 保存一段预留区间并刷盘
+     *
+     * @return 没有空闲槽或序列名过长时返回 false
+     */
+    public boolean append(String sequenceName, SequenceRange range) {
+        byte[] name = sequenceName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            return false;
+        }
+        lock.lock();
+        try {
+            Integer index = freeSlots.pollFirst();
+            if (index == null) {
+                return false;
+            }
+            int offset = slotOffset(index);
+            buffer.putInt(offset + STATE_OFFSET, RESERVED);
+            buffer.putLong(offset + MIN_OFFSET, range.getMin());
+            buffer.putLong(offset + MAX_OFFSET, range.getMax());
+            buffer.putShort(offset + NAME_LENGTH_OFFSET, (short) name.length);
+            buffer.put(offset + NAME_OFFSET, new byte[MAX_NAME_BYTES]);
+            buffer.put(offset + NAME_OFFSET, name);
+            buffer.putLong(offset + CHECKSUM_OFFSET, checksum(offset));
+            buffer.force(offset, SLOT_SIZE);
+            reserved.computeIfAbsent(sequenceName, k -> new ArrayDeque<>())
+                    .add(new Slot(index, range.getMin(), range.getMax()));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出序列最早预留的一段区间, 清除对应的槽并刷盘后才返回
+     *
+     * @return 区间, 没有预留区间时返回空
+     */
+    public SequenceRange take(String sequenceName) {
+        lock.lock();
+        try {
+            Deque<Slot> slots = reserved.get(sequenceName);
+            if (slots == null || slots.isEmpty()) {
+                return null;
+            }
+            Slot slot = slots.poll();
+            if (slots.isEmpty()) {
+                reserved.remove(sequenceName);
+            }
+            clear(slot.index);
+            buffer.force(slotOffset(slot.index), SLOT_SIZE);
+            freeSlots.add(slot.index);
+            return new SequenceRange(slot.min, slot.max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            buffer.force();
+            fileLock.release();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clear(int index) {
+        int offset = slotOffset(index);
+        buffer.putInt(offset + STATE_OFFSET, EMPTY);
+        buffer.putLong(offset + CHECKSUM_OFFSET, 0);
+    }
+
+    private long checksum(int offset) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer.slice(offset, CHECKSUM_OFFSET));
+        return crc32.getValue();
+    }
+
+    private static int slotOffset(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+    private static class Slot {
+        private final int index;
+        private final long min;
+        private final long max;
+
+        private Slot(int index, long min, long max) {
+            this.index = index;
+            this.min = min;
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 获取区间专用的少量长连接, 每个连接缓存自己的 PreparedStatement
+ * <p>
+ * 连接池归还连接时会关闭语句, 每次获取区间都要重新 prepare; 这里的连接只用于获取区间,
+ * 语句在连接的生命周期内复用, 配合 MySQL 的 useServerPrepStmts 只在首次使用时在服务端 prepare。
+ * 获取区间的并发数不超过连接数, 超出的请求排队等待, 等待超过 timeoutMillis 时失败。
+ * 执行出错的连接连同语句一起丢弃, 下次使用时重新建立, 超过 maxLifetimeMillis 的连接也会重建
+ */
+public class RefillConnections implements AutoCloseable {
+
+    private final DataSource dataSource;
+
+    private final BlockingQueue<RefillConnection> idle;
+
+    private final long timeoutMillis;
+
+    private final long maxLifetimeNanos;
+
+    /**
+     * 累计 prepare 的语句数
+     */
+    private final AtomicLong preparedCount = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param dataSource        建立连接的数据源, 应为不带连接池的数据源
+     * @param size              连接数
+     * @param timeoutMillis     等待空闲连接的超时时间, 单位: 毫秒
+     * @param maxLifetimeMillis 连接的最长使用时间, 单位: 毫秒, 小于等于 0 时不限制
+     */
+    public RefillConnections(DataSource dataSource, int size, long timeoutMillis, long maxLifetimeMillis) {
+        this.dataSource = dataSource;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.timeoutMillis = timeoutMillis;
+        this.maxLifetimeNanos = maxLifetimeMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis) : Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            // 首次使用时才建立连接
+            idle.add(new RefillConnection());
+        }
+    }
+
+    /**
+     * 借用一个连接执行 callback, 执行完成后归还
+     *
+     * @throws SQLException      执行出错, 连接已被丢弃
+     * @throws SequenceException 等待连接超时或 callback 失败
+     */
+    public <T> T execute(ConnectionCallback<T> callback) throws SQLException, SequenceException {
+        if (closed) {
+            throw new SequenceUnavailableException("Refill connections are closed");
+        }
+        RefillConnection connection;
+        try {
+            connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SequenceException("Interrupted waiting for refill connection", e);
+        }
+        if (connection == null) {
+            throw new SequenceUnavailableException("Timed out waiting for refill connection after " + timeoutMillis + "ms");
+        }
+        try {
+            connection.open();
+            return callback.doWith(connection);
+        } catch (SQLException | RuntimeException e) {
+            connection.discard();
+            throw e;
+        } finally {
+            if (closed) {
+                connection.discard();
+            }
+            idle.offer(connection);
+        }
+    }
+
+    public long getPreparedCount() {
+        return preparedCount.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (RefillConnection connection : idle) {
+            connection.discard();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ConnectionCallback<T> {
+        T doWith(RefillConnection connection) throws SQLException, SequenceException;
+    }
+
+    /**
+     * 专用连接, 同一时刻只被一个线程使用
+     */
+    public final class RefillConnection {
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private Connection connection;
+
+        private long openedAt;
+
+        private RefillConnection() {
+        }
+
+        /**
+         * 取得缓存的语句, 首次使用时 prepare, 之后清除上次的参数后复用
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+                preparedCount.incrementAndGet();
+            } else {
+                stmt.clearParameters();
+            }
+            return stmt;
+        }
+
+        private void open() throws SQLException {
+            if (connection != null && System.nanoTime() - openedAt > maxLifetimeNanos) {
+                discard();
+            }
+            if (connection == null) {
+                connection = dataSource.getConnection();
+                connection.setAutoCommit(true);
+                openedAt = System.nanoTime();
+            }
+        }
+
+        private void discard() {
+            for (PreparedStatement stmt : statements.values()) {
+                DefaultSequenceDao.closeStatement(stmt);
+            }
+            statements.clear();
+            DefaultSequenceDao.closeConnection(connection);
+            connection = null;
+        }
+    }
+}
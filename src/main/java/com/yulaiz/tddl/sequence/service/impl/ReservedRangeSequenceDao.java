@@ -0,0 +1,153 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 带本地预留区间的 SequenceDao
+ * <p>
+ * 每个取过区间的序列额外预留 rangesPerSequence 段区间保存在 {@link RangeJournal} 中,
+ * 数据库不可用 ({@link SequenceUnavailableException}) 时从预留区间中取, 重启后预留区间仍然可用。
+ * 序列不存在、步长非法、值溢出等错误直接抛出, 不使用预留区间。数据库恢复后在后台补足预留区间
+ */
+@Slf4j
+public class ReservedRangeSequenceDao implements SequenceDao {
+
+    private final SequenceDao delegate;
+
+    private final RangeJournal journal;
+
+    private final Executor executor;
+
+    /**
+     * 每个序列预留的区间数
+     */
+    private final int rangesPerSequence;
+
+    /**
+     * 正在补充预留区间的序列
+     */
+    private final Set<String> replenishing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 预留槽已满时只打印一次告警
+     */
+    private volatile boolean journalFullWarned;
+
+    public ReservedRangeSequenceDao(SequenceDao delegate, RangeJournal journal,
+                                    Executor executor, int rangesPerSequence) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.executor = executor;
+        this.rangesPerSequence = rangesPerSequence;
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        SequenceRange range;
+        try {
+            range = delegate.nextRange(sequenceName, requestedSize);
+        } catch (SequenceUnavailableException e) {
+            SequenceRange reservedRange = journal.take(sequenceName);
+            if (reservedRange == null) {
+                throw e;
+            }
+            log.warn("Failed to fetch sequence range, use reserved range [{}, {}], sequenceName = {}",
+                    reservedRange.getMin(), reservedRange.getMax(), sequenceName, e);
+            return reservedRange;
+        }
+        replenishIfNecessary(sequenceName);
+        return range;
+    }
+
+    @Override
+    public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        Map<String, SequenceRange> ranges;
+        try {
+            ranges = delegate.nextRanges(requestedSizes);
+        } catch (SequenceUnavailableException e) {
+            ranges = new LinkedHashMap<>();
+            for (String sequenceName : requestedSizes.keySet()) {
+                SequenceRange reservedRange = journal.take(sequenceName);
+                if (reservedRange != null) {
+                    ranges.put(sequenceName, reservedRange);
+                }
+            }
+            if (ranges.isEmpty()) {
+                throw e;
+            }
+            log.warn("Failed to fetch sequence ranges, use reserved ranges of {} sequences", ranges.size(), e);
+            return ranges;
+        }
+        for (String sequenceName : ranges.keySet()) {
+            replenishIfNecessary(sequenceName);
+        }
+        return ranges;
+    }
+
+    @Override
+    public List<String> listSequenceNames() throws SequenceException {
+        return delegate.listSequenceNames();
+    }
+
+    /**
+     * 预留区间不足时在后台补充, 同一序列同一时刻只有一个补充任务
+     */
+    private void replenishIfNecessary(String sequenceName) {
+        if (journal.count(sequenceName) >= rangesPerSequence || !replenishing.add(sequenceName)) {
+            return;
+        }
+        if (!journal.accepts(sequenceName)) {
+            replenishing.remove(sequenceName);
+            if (!journalFullWarned) {
+                journalFullWarned = true;
+                log.warn("Range journal is full or sequence name is too long, sequenceName = {}", sequenceName);
+            }
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    replenish(sequenceName);
+                } finally {
+                    replenishing.remove(sequenceName);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            replenishing.remove(sequenceName);
+        }
+    }
+
+    private void replenish(String sequenceName) {
+        while (journal.count(sequenceName) < rangesPerSequence) {
+            SequenceRange range;
+            try {
+                range = delegate.nextRange(sequenceName);
+            } catch (SequenceException e) {
+                log.debug("Failed to replenish reserved range, sequenceName = {}", sequenceName, e);
+                return;
+            }
+            if (!journal.append(sequenceName, range)) {
+                log.warn("Range journal is full, range [{}, {}] of {} is discarded",
+                        range.getMin(), range.getMax(), sequenceName);
+                return;
+            }
+        }
+    }
+}
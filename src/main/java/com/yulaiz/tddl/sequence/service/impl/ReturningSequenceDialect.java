@@ -0,0 +1,73 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * 一条 update 语句推进序列值并直接返回新值和步长的方言, 预留区间只需一次往返
+ */
+public abstract class ReturningSequenceDialect implements SequenceDialect {
+
+    /**
+     * 按指定大小推进, 参数: size, modified, name, maxValue
+     */
+    private final String sizedSql;
+
+    /**
+     * 按表中的步长推进, 参数: modified, name, maxValue
+     */
+    private final String stepSql;
+
+    protected ReturningSequenceDialect(SequenceTable table) {
+        String where = " where " + table.nameColumn() + " = ?" +
+                " and " + table.valueColumn() + " >= 0" +
+                " and " + table.valueColumn() + " <= ?";
+        this.sizedSql = returning(table, "update " + table.table() +
+                " set " + table.valueColumn() + " = " + table.valueColumn() + " + ?" +
+                ", " + table.modifiedColumn() + " = ?" + where);
+        this.stepSql = returning(table, "update " + table.table() +
+                " set " + table.valueColumn() + " = " + table.valueColumn() + " + " + table.stepColumn() +
+                ", " + table.modifiedColumn() + " = ?" + where +
+                " and " + table.stepColumn() + " > 0");
+    }
+
+    /**
+     * 把 update 语句改写为返回 更新后的值, 步长 两列的语句
+     */
+    protected abstract String returning(SequenceTable table, String updateSql);
+
+    @Override
+    public boolean returnsStep() {
+        return true;
+    }
+
+    @Override
+    public SequenceRange reserve(StatementPreparer preparer, String sequenceName, int size)
+            throws SQLException, SequenceException {
+        PreparedStatement stmt;
+        int index = 1;
+        if (size > 0) {
+            stmt = preparer.prepare(sizedSql);
+            stmt.setLong(index++, size);
+        } else {
+            stmt = preparer.prepare(stepSql);
+        }
+        stmt.setTimestamp(index++, new Timestamp(System.currentTimeMillis()));
+        stmt.setString(index++, sequenceName);
+        stmt.setLong(index, Long.MAX_VALUE - DefaultSequenceDao.DELTA);
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next()) {
+                throw new SequenceException("Sequence does not exist, value is out of range or step is invalid, " +
+                        "sequenceName = " + sequenceName);
+            }
+            long newValue = rs.getLong(1);
+            int step = size > 0 ? size : rs.getInt(2);
+            return new SequenceRange(newValue - step + 1, newValue);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * 数据库方言, 决定 atomic 分配方式下如何用最少的往返原子预留一段区间
+ * <p>
+ * 新增数据库时实现该接口并加入 {@link #DIALECTS}, 配置 sequence.dialect 为方言名称或 auto
+ */
+public interface SequenceDialect {
+
+    /**
+     * 已知的方言, auto 时按顺序匹配数据库产品名
+     */
+    List<Function<SequenceTable, SequenceDialect>> DIALECTS = List.of(
+            MySqlSequenceDialect::new,
+            PostgreSqlSequenceDialect::new,
+            H2SequenceDialect::new);
+
+    /**
+     * 方言名称, 与 sequence.dialect 配置对应
+     */
+    String getName();
+
+    /**
+     * 是否适用于该数据库
+     *
+     * @param databaseProductName JDBC 元数据中的数据库产品名
+     */
+    boolean supports(String databaseProductName);
+
+    /**
+     * 预留区间时是否同时取回表中的步长, 为 false 时调用方必须传入确定的区间大小
+     */
+    boolean returnsStep();
+
+    /**
+     * 原子预留一段区间
+     *
+     * @param preparer     创建语句, 语句由调用方关闭
+     * @param sequenceName 序列名称
+     * @param size         区间大小, 小于等于 0 时使用表中的步长, 仅 {@link #returnsStep()} 为 true 时允许
+     * @return 预留的区间
+     * @throws SQLException      执行失败
+     * @throws SequenceException 序列不存在或值越界
+     */
+    SequenceRange reserve(StatementPreparer preparer, String sequenceName, int size)
+            throws SQLException, SequenceException;
+
+    @FunctionalInterface
+    interface StatementPreparer {
+        PreparedStatement prepare(String sql) throws SQLException;
+    }
+
+    /**
+     * 按名称创建方言
+     *
+     * @param name  方言名称
+     * @param table 序列表
+     * @return 方言, 名称未知时返回空
+     */
+    static SequenceDialect forName(String name, SequenceTable table) {
+        for (Function<SequenceTable, SequenceDialect> factory : DIALECTS) {
+            SequenceDialect dialect = factory.apply(table);
+            if (dialect.getName().equalsIgnoreCase(name)) {
+                return dialect;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按数据库产品名匹配方言
+     *
+     * @param databaseProductName JDBC 元数据中的数据库产品名
+     * @param table               序列表
+     * @return 方言, 不支持的数据库返回空
+     */
+    static SequenceDialect forDatabase(String databaseProductName, SequenceTable table) {
+        String productName = databaseProductName.toLowerCase(Locale.ROOT);
+        for (Function<SequenceTable, SequenceDialect> factory : DIALECTS) {
+            SequenceDialect dialect = factory.apply(table);
+            if (dialect.supports(productName)) {
+                return dialect;
+            }
+        }
+        return null;
+    }
+}
@@ -3,26 +3,293 @@ package com.yulaiz.tddl.sequence.service.impl;
 import com.yulaiz.tddl.sequence.exception.SequenceException;
 import com.yulaiz.tddl.sequence.service.Sequence;
 import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
 public class SequenceImpl implements Sequence {
     private final SequenceDao sequenceDao;
-    private final Map<String, DefaultSequence> sequenceMap = new HashMap<>();
-    private final Lock lock = new ReentrantLock();
+    private final SequenceMetrics sequenceMetrics;
+    private final SnowflakeWorkerLease snowflakeWorkerLease;
+    private final SequenceOptions options = new SequenceOptions();
+    /**
+     * 是否开启区间预取
+     */
+    @Value("${sequence.buffer.enabled:false}")
+    private boolean bufferEnabled;
+    /**
+     * 预取水位, 当前区间剩余比例低于该值时触发预取
+     */
+    @Value("${sequence.buffer.watermark:0.2}")
+    private double bufferWatermark;
+    /**
+     * 预取线程数
+     */
+    @Value("${sequence.buffer.refill-threads:4}")
+    private int refillThreads;
+
+    /**
+     * 是否使用虚拟线程, 开启后预取任务在虚拟线程中执行, 不再受 refill-threads 限制
+     */
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    /**
+     * 等待其他线程切换区间和等待合并请求结果的超时时间, 单位: 毫秒, 0 为不限制
+     */
+    @Value("${sequence.refill.wait-timeout-millis:3000}")
+    private long refillWaitTimeoutMillis;
+    /**
+     * 同一序列等待区间切换的线程数上限, 0 为不限制
+     */
+    @Value("${sequence.refill.max-waiters:0}")
+    private int refillMaxWaiters;
+
+    /**
+     * 是否开启熔断
+     */
+    @Value("${sequence.breaker.enabled:false}")
+    private boolean breakerEnabled;
+    /**
+     * 连续失败多少次后熔断
+     */
+    @Value("${sequence.breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+    /**
+     * 熔断时长, 单位: 毫秒
+     */
+    @Value("${sequence.breaker.open-millis:5000}")
+    private long breakerOpenMillis;
+    /**
+     * 获取区间耗时超过该值时计为失败, 单位: 毫秒, 0 为不计
+     */
+    @Value("${sequence.breaker.slow-call-millis:1000}")
+    private long breakerSlowCallMillis;
+
+    /**
+     * 是否根据消耗速度动态调整区间大小
+     */
+    @Value("${sequence.adaptive.enabled:false}")
+    private boolean adaptiveEnabled;
+    /**
+     * 动态区间大小下限
+     */
+    @Value("${sequence.adaptive.min-step:1000}")
+    private int adaptiveMinStep;
+    /**
+     * 动态区间大小上限
+     */
+    @Value("${sequence.adaptive.max-step:1000000}")
+    private int adaptiveMaxStep;
+    /**
+     * 每段区间期望的使用时长, 单位: 毫秒
+     */
+    @Value("${sequence.adaptive.target-millis:60000}")
+    private long adaptiveTargetMillis;
+
+    /**
+     * 是否合并并发的区间请求
+     */
+    @Value("${sequence.coalesce.enabled:false}")
+    private boolean coalesceEnabled;
+    /**
+     * 合并窗口, 单位: 微秒
+     */
+    @Value("${sequence.coalesce.window-micros:2000}")
+    private long coalesceWindowMicros;
+    /**
+     * 单批最多合并的请求数
+     */
+    @Value("${sequence.coalesce.max-batch-size:200}")
+    private int coalesceMaxBatchSize;
+
+    /**
+     * 使用时间戳序列的序列名, 不访问数据库
+     */
+    @Value("${sequence.snowflake.names:}")
+    private Set<String> snowflakeNames;
+    /**
+     * 时间戳序列的起始时间, 单位: 毫秒
+     */
+    @Value("${sequence.snowflake.epoch:1704067200000}")
+    private long snowflakeEpoch;
+
+    private SnowflakeSequence snowflakeSequence;
+
+    /**
+     * 分段发号的序列名, 只保证唯一不保证递增
+     */
+    @Value("${sequence.striped.names:}")
+    private Set<String> stripedNames;
+    /**
+     * 分段数, 小于等于 0 时使用 CPU 核数
+     */
+    @Value("${sequence.striped.stripes:0}")
+    private int stripes;
+    /**
+     * 每个分段一次切出的值个数
+     */
+    @Value("${sequence.striped.stripe-size:64}")
+    private int stripeSize;
+
+    private SequenceOptions stripedOptions;
+
+    /**
+     * 缓存的序列数上限
+     */
+    @Value("${sequence.registry.max-size:100000}")
+    private int registryMaxSize;
+    /**
+     * 序列空闲超过该时长后被淘汰, 单位: 毫秒
+     */
+    @Value("${sequence.registry.idle-millis:3600000}")
+    private long registryIdleMillis;
+
+    /**
+     * 是否在本地保存预留区间, 数据库不可用时使用
+     */
+    @Value("${sequence.reserve.enabled:false}")
+    private boolean reserveEnabled;
+    /**
+     * 预留区间日志文件路径
+     */
+    @Value("${sequence.reserve.path:data/sequence-reserve.journal}")
+    private String reservePath;
+    /**
+     * 每个序列预留的区间数
+     */
+    @Value("${sequence.reserve.ranges-per-sequence:2}")
+    private int reserveRangesPerSequence;
+    /**
+     * 日志中的槽数, 即最多保存的预留区间数
+     */
+    @Value("${sequence.reserve.slots:4096}")
+    private int reserveSlots;
+
+    private RangeJournal rangeJournal;
+    private ExecutorService reserveExecutor;
+
+    @Getter
+    private SequenceRegistry registry;
+
+    private ExecutorService refillExecutor;
+    private ScheduledExecutorService coalesceScheduler;
+    private CoalescingSequenceDao coalescingSequenceDao;
+    /**
+     * 实际用于获取区间的 SequenceDao, 开启合并时为 {@link CoalescingSequenceDao}
+     */
+    private SequenceDao rangeDao;
+
+    @PostConstruct
+    public void init() throws IOException, SequenceException {
+        registry = new SequenceRegistry(registryMaxSize, registryIdleMillis, (sequenceName, sequence) -> {
+            sequenceMetrics.release(sequenceName, sequence);
+            sequenceDao.release(sequenceName);
+        });
+        sequenceMetrics.bindRegistry(registry);
+        rangeDao = sequenceDao;
+        if (!snowflakeNames.isEmpty()) {
+            // 没有空闲的 workerId 时启动失败
+            snowflakeWorkerLease.acquire();
+        }
+        snowflakeSequence = new SnowflakeSequence(snowflakeWorkerLease::getWorkerId, snowflakeEpoch);
+        snowflakeWorkerLease.trackLastTimestamp(snowflakeSequence::lastTimestamp);
+        if (breakerEnabled) {
+            // 熔断在预留区间之内, 熔断时仍可使用预留区间
+            rangeDao = new CircuitBreakerSequenceDao(rangeDao, breakerFailureThreshold,
+                    breakerOpenMillis, breakerSlowCallMillis);
+        }
+        if (reserveEnabled) {
+            rangeJournal = new RangeJournal(Paths.get(reservePath), reserveSlots);
+            reserveExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "sequence-reserve");
+                thread.setDaemon(true);
+                return thread;
+            });
+            rangeDao = new ReservedRangeSequenceDao(rangeDao, rangeJournal, reserveExecutor, reserveRangesPerSequence);
+        }
+        if (coalesceEnabled) {
+            coalesceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sequence-coalesce");
+                thread.setDaemon(true);
+                return thread;
+            });
+            coalescingSequenceDao = new CoalescingSequenceDao(rangeDao, coalesceScheduler,
+                    coalesceWindowMicros, coalesceMaxBatchSize, refillWaitTimeoutMillis);
+            rangeDao = coalescingSequenceDao;
+        }
+        if (bufferEnabled) {
+            if (virtualThreadsEnabled) {
+                refillExecutor = Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("sequence-refill-", 1).factory());
+            } else {
+                AtomicInteger threadIndex = new AtomicInteger();
+                refillExecutor = Executors.newFixedThreadPool(refillThreads, r -> {
+                    Thread thread = new Thread(r, "sequence-refill-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            options.setRefillExecutor(refillExecutor);
+            options.setPrefetchWatermark(bufferWatermark);
+        }
+        options.setAdaptiveStepEnabled(adaptiveEnabled);
+        options.setMinStep(adaptiveMinStep);
+        options.setMaxStep(adaptiveMaxStep);
+        options.setTargetMillis(adaptiveTargetMillis);
+        options.setMetrics(sequenceMetrics);
+        options.setRefillWaitTimeoutMillis(refillWaitTimeoutMillis);
+        options.setMaxRefillWaiters(refillMaxWaiters);
+        stripedOptions = options.withStripes(
+                stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors(), stripeSize);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refillExecutor != null) {
+            refillExecutor.shutdownNow();
+        }
+        if (coalescingSequenceDao != null) {
+            coalescingSequenceDao.close();
+        }
+        if (coalesceScheduler != null) {
+            coalesceScheduler.shutdownNow();
+        }
+        if (reserveExecutor != null) {
+            reserveExecutor.shutdownNow();
+        }
+        if (rangeJournal != null) {
+            try {
+                rangeJournal.close();
+            } catch (IOException e) {
+                log.warn("Failed to close range journal", e);
+            }
+        }
+    }
 
     /**
      * 取得序列下一个值
@@ -33,6 +300,9 @@ public class SequenceImpl implements Sequence {
      */
     @Override
     public long nextValue(String sequenceName) throws SequenceException {
+        if (snowflakeNames.contains(sequenceName)) {
+            return snowflakeSequence.nextValue(sequenceName);
+        }
         DefaultSequence sequence = this.getDefaultSequence(sequenceName);
         return sequence.nextValue();
     }
@@ -47,28 +317,83 @@ public class SequenceImpl implements Sequence {
      */
     @Override
     public List<Long> nextValueList(String sequenceName, int step) throws SequenceException {
+        if (snowflakeNames.contains(sequenceName)) {
+            return snowflakeSequence.nextValueList(sequenceName, step);
+        }
+        DefaultSequence sequence = this.getDefaultSequence(sequenceName);
+        return sequence.nextValueList(step);
+    }
+
+    /**
+     * 根据步长取得序列下一组值, 以连续区间的形式返回
+     *
+     * @param sequenceName 序列名称
+     * @param step         步长,一共获取多少个值
+     * @return 返回序列下一组值, 每段为一个连续区间 [start, end]
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public List<SequenceSegment> nextSegments(String sequenceName, int step) throws SequenceException {
+        if (snowflakeNames.contains(sequenceName)) {
+            return snowflakeSequence.nextSegments(sequenceName, step);
+        }
         DefaultSequence sequence = this.getDefaultSequence(sequenceName);
-        List<Long> list = new ArrayList<>(step);
-        for (int i = 0; i < step; i++) {
-            list.add(sequence.nextValue());
+        return sequence.nextSegments(step);
+    }
+
+    /**
+     * 取得序列下一组值, 写入调用方提供的数组
+     *
+     * @param sequenceName 序列名称
+     * @param values       存放序列值的数组
+     * @param offset       写入的起始下标
+     * @param length       一共获取多少个值
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public void nextValues(String sequenceName, long[] values, int offset, int length) throws SequenceException {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        if (snowflakeNames.contains(sequenceName)) {
+            snowflakeSequence.nextValues(sequenceName, values, offset, length);
+            return;
         }
-        return list;
+        DefaultSequence sequence = this.getDefaultSequence(sequenceName);
+        sequence.nextValues(values, offset, length);
     }
 
-    private DefaultSequence getDefaultSequence(String sequenceName) {
-        DefaultSequence sequence = sequenceMap.get(sequenceName);
-        if (sequence == null) {
-            lock.lock();
-            try {
-                sequence = sequenceMap.get(sequenceName);
-                if (sequence == null) {
-                    sequence = new DefaultSequence(sequenceDao, sequenceName);
-                    sequenceMap.put(sequenceName, sequence);
-                }
-            } finally {
-                lock.unlock();
+    /**
+     * 批量预热序列, 一次获取所有未加载序列的第一段区间
+     *
+     * @param sequenceNames 序列名称
+     * @return 预热成功的序列数
+     * @throws SequenceException 获取序列失败
+     */
+    public int preload(Collection<String> sequenceNames) throws SequenceException {
+        Map<String, DefaultSequence> sequences = new LinkedHashMap<>();
+        for (String sequenceName : sequenceNames) {
+            if (snowflakeNames.contains(sequenceName)) {
+                continue;
+            }
+            DefaultSequence sequence = this.getDefaultSequence(sequenceName);
+            if (!sequence.isLoaded()) {
+                sequences.put(sequenceName, sequence);
+            }
+        }
+        if (sequences.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Map<String, SequenceRange> ranges = rangeDao.nextRanges(sequences.keySet());
+        for (Map.Entry<String, SequenceRange> entry : ranges.entrySet()) {
+            if (sequences.get(entry.getKey()).preload(entry.getValue())) {
+                count++;
             }
         }
-        return sequence;
+        return count;
+    }
+
+    private DefaultSequence getDefaultSequence(String sequenceName) {
+        return registry.get(sequenceName, name -> new DefaultSequence(rangeDao, name,
+                stripedNames.contains(name) ? stripedOptions : options));
     }
 }
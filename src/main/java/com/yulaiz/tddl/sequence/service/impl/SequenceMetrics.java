@@ -0,0 +1,174 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 序列指标
+ * <p>
+ * 每个序列一组指标, 以 sequence 标签区分。为了限制标签数量, 同一时刻最多 maxTaggedSequences 个序列
+ * 使用自己的名称作为标签, 其余序列合并到 sequence=_other 中, 且不提供剩余量指标。
+ * 序列从缓存中淘汰时移除其指标, 空出的标签留给之后出现的序列
+ */
+@Slf4j
+@Component
+public class SequenceMetrics {
+    /**
+     * 不记录任何指标, 用于脱离 Spring 使用的场景
+     */
+    public static final SequenceMetrics NOOP = new SequenceMetrics(new CompositeMeterRegistry(), 0);
+
+    static final String OTHER = "_other";
+
+    private final MeterRegistry meterRegistry;
+
+    private final int maxTaggedSequences;
+
+    private final Map<String, SequenceMeters> metersMap = new ConcurrentHashMap<>();
+
+    private final SequenceMeters otherMeters;
+
+    @Autowired
+    public SequenceMetrics(MeterRegistry meterRegistry,
+                           @Value("${sequence.metrics.max-tagged-sequences:100}") int maxTaggedSequences) {
+        this.meterRegistry = meterRegistry;
+        this.maxTaggedSequences = maxTaggedSequences;
+        this.otherMeters = new SequenceMeters(meterRegistry, OTHER, false);
+    }
+
+    /**
+     * 取得序列的指标, 超过标签上限的序列共用 _other 指标
+     *
+     * @param sequenceName 序列名称
+     * @return 序列指标
+     */
+    public SequenceMeters meters(String sequenceName) {
+        SequenceMeters meters = metersMap.get(sequenceName);
+        if (meters != null) {
+            return meters;
+        }
+        if (metersMap.size() >= maxTaggedSequences) {
+            return otherMeters;
+        }
+        return metersMap.computeIfAbsent(sequenceName, name -> new SequenceMeters(meterRegistry, name, true));
+    }
+
+    /**
+     * 序列被淘汰时移除其指标, 释放标签
+     *
+     * @param sequenceName 序列名称
+     * @param sequence     被淘汰的序列, 指标已绑定到重新创建的序列时不移除
+     */
+    public void release(String sequenceName, DefaultSequence sequence) {
+        SequenceMeters meters = metersMap.get(sequenceName);
+        if (meters != null && meters.sequence.get() == sequence && metersMap.remove(sequenceName, meters)) {
+            for (Meter meter : meters.meters) {
+                meterRegistry.remove(meter);
+            }
+        }
+    }
+
+    /**
+     * 注册序列缓存的大小和淘汰次数
+     */
+    public void bindRegistry(SequenceRegistry registry) {
+        Gauge.builder("sequence.registry.size", registry, SequenceRegistry::size)
+                .description("Number of cached sequences")
+                .register(meterRegistry);
+        FunctionCounter.builder("sequence.registry.evictions", registry, SequenceRegistry::getIdleEvictionCount)
+                .description("Number of evicted sequences")
+                .tag("cause", "idle")
+                .register(meterRegistry);
+        FunctionCounter.builder("sequence.registry.evictions", registry, SequenceRegistry::getSizeEvictionCount)
+                .description("Number of evicted sequences")
+                .tag("cause", "size")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 单个序列的指标
+     */
+    public static class SequenceMeters {
+        private final LongAdder issued = new LongAdder();
+        private final Timer refillTimer;
+        private final Timer waitTimer;
+        private final Counter retryCounter;
+        private final List<Meter> meters = new ArrayList<>(5);
+        /**
+         * 当前使用中的序列, 序列被淘汰后重新创建时替换; 弱引用, 不阻止被淘汰的序列回收
+         */
+        private volatile WeakReference<DefaultSequence> sequence = new WeakReference<>(null);
+
+        private SequenceMeters(MeterRegistry meterRegistry, String sequenceName, boolean remainingGauge) {
+            meters.add(FunctionCounter.builder("sequence.issued", issued, LongAdder::sum)
+                    .description("Number of issued sequence values")
+                    .tag("sequence", sequenceName)
+                    .register(meterRegistry));
+            refillTimer = Timer.builder("sequence.refill")
+                    .description("Time taken to fetch a new range from the sequence dao")
+                    .tag("sequence", sequenceName)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            waitTimer = Timer.builder("sequence.switch.wait")
+                    .description("Time callers spent waiting for another thread to switch ranges")
+                    .tag("sequence", sequenceName)
+                    .register(meterRegistry);
+            retryCounter = Counter.builder("sequence.retries")
+                    .description("Number of optimistic update retries while fetching ranges")
+                    .tag("sequence", sequenceName)
+                    .register(meterRegistry);
+            meters.add(refillTimer);
+            meters.add(waitTimer);
+            meters.add(retryCounter);
+            if (remainingGauge) {
+                meters.add(Gauge.builder("sequence.range.remaining", this, SequenceMeters::remaining)
+                        .description("Values left in the current range")
+                        .tag("sequence", sequenceName)
+                        .strongReference(true)
+                        .register(meterRegistry));
+            }
+        }
+
+        void bind(DefaultSequence sequence) {
+            this.sequence = new WeakReference<>(sequence);
+        }
+
+        void issued(long count) {
+            issued.add(count);
+        }
+
+        void refilled(long nanos) {
+            refillTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void waited(long nanos) {
+            waitTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        void retried(int count) {
+            retryCounter.increment(count);
+        }
+
+        private double remaining() {
+            DefaultSequence current = sequence.get();
+            return current == null ? 0 : current.getRemaining();
+        }
+    }
+}
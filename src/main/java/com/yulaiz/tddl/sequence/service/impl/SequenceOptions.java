@@ -0,0 +1,83 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import lombok.Data;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 序列运行参数, 由 {@link SequenceImpl} 根据配置创建, 所有 {@link DefaultSequence} 共享
+ */
+@Data
+public class SequenceOptions {
+    /**
+     * 异步预取下一段区间的线程池, 为空时不预取
+     */
+    private Executor refillExecutor;
+    /**
+     * 预取水位, 当前区间剩余比例低于该值时触发预取, 取值 (0, 1)
+     */
+    private double prefetchWatermark;
+    /**
+     * 是否根据消耗速度动态调整区间大小
+     */
+    private boolean adaptiveStepEnabled;
+    /**
+     * 动态区间大小下限
+     */
+    private int minStep;
+    /**
+     * 动态区间大小上限
+     */
+    private int maxStep;
+    /**
+     * 每段区间期望的使用时长, 单位: 毫秒
+     */
+    private long targetMillis;
+    /**
+     * 序列指标
+     */
+    private SequenceMetrics metrics = SequenceMetrics.NOOP;
+    /**
+     * 分段数, 大于 0 时每个线程从自己的分段中取值, 只保证唯一不保证递增, 见 {@link DefaultSequence}
+     */
+    private int stripes;
+    /**
+     * 每个分段一次从当前区间切出的值个数
+     */
+    private int stripeSize;
+    /**
+     * 等待其他线程切换区间的超时时间, 单位: 毫秒, 0 为不限制
+     */
+    private long refillWaitTimeoutMillis;
+    /**
+     * 同一序列等待区间切换的线程数上限, 超出时直接失败, 0 为不限制
+     */
+    private int maxRefillWaiters;
+
+    public boolean isStriped() {
+        return stripes > 0 && stripeSize > 0;
+    }
+
+    /**
+     * 复制一份参数, 只修改分段配置
+     */
+    public SequenceOptions withStripes(int stripes, int stripeSize) {
+        SequenceOptions copy = new SequenceOptions();
+        copy.setRefillExecutor(refillExecutor);
+        copy.setPrefetchWatermark(prefetchWatermark);
+        copy.setAdaptiveStepEnabled(adaptiveStepEnabled);
+        copy.setMinStep(minStep);
+        copy.setMaxStep(maxStep);
+        copy.setTargetMillis(targetMillis);
+        copy.setMetrics(metrics);
+        copy.setRefillWaitTimeoutMillis(refillWaitTimeoutMillis);
+        copy.setMaxRefillWaiters(maxRefillWaiters);
+        copy.setStripes(stripes);
+        copy.setStripeSize(stripeSize);
+        return copy;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return refillExecutor != null && prefetchWatermark > 0 && prefetchWatermark < 1;
+    }
+}
@@ -0,0 +1,155 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 有上限的序列缓存
+ * <p>
+ * 命中时只有一次 ConcurrentHashMap 查找, 不加锁; 未命中创建新序列时顺带清理,
+ * 先淘汰空闲超过 idleMillis 的序列, 仍超过 maxSize 时按最近访问时间淘汰最久未用的序列,
+ * 一次淘汰到 maxSize 的 90%, 避免容量满后每个新序列都要排序一次全部序列。
+ * 被淘汰的序列剩余的区间直接丢弃, 再次访问时重新从数据库获取, 淘汰后通知 evictionListener
+ */
+@Slf4j
+public class SequenceRegistry {
+    /**
+     * 访问时间的更新精度, 避免热点序列每次访问都写共享变量
+     */
+    private static final long ACCESS_RESOLUTION_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, Entry> sequenceMap = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    /**
+     * 超过容量时淘汰到的大小
+     */
+    private final int lowWaterSize;
+
+    private final long idleNanos;
+
+    private final Lock evictLock = new ReentrantLock();
+
+    private volatile long lastSweepNanos = System.nanoTime();
+
+    private final AtomicLong idleEvictionCount = new AtomicLong();
+
+    private final AtomicLong sizeEvictionCount = new AtomicLong();
+
+    private final BiConsumer<String, DefaultSequence> evictionListener;
+
+    public SequenceRegistry(int maxSize, long idleMillis) {
+        this(maxSize, idleMillis, (name, sequence) -> {
+        });
+    }
+
+    public SequenceRegistry(int maxSize, long idleMillis, BiConsumer<String, DefaultSequence> evictionListener) {
+        this.maxSize = maxSize;
+        this.lowWaterSize = maxSize - maxSize / 10;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.evictionListener = evictionListener;
+    }
+
+    public DefaultSequence get(String sequenceName, Function<String, DefaultSequence> factory) {
+        long now = System.nanoTime();
+        Entry entry = sequenceMap.get(sequenceName);
+        if (entry != null) {
+            if (now - entry.lastAccessNanos > ACCESS_RESOLUTION_NANOS) {
+                entry.lastAccessNanos = now;
+            }
+            return entry.sequence;
+        }
+        entry = sequenceMap.computeIfAbsent(sequenceName, name -> new Entry(factory.apply(name), now));
+        if (sequenceMap.size() > maxSize || now - lastSweepNanos > idleNanos / 10) {
+            evict(now);
+        }
+        return entry.sequence;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return sequenceMap.size();
+    }
+
+    /**
+     * 因空闲超时被淘汰的序列数
+     */
+    public long getIdleEvictionCount() {
+        return idleEvictionCount.get();
+    }
+
+    /**
+     * 因超过容量被淘汰的序列数
+     */
+    public long getSizeEvictionCount() {
+        return sizeEvictionCount.get();
+    }
+
+    private void evict(long now) {
+        if (!evictLock.tryLock()) {
+            return;
+        }
+        try {
+            lastSweepNanos = now;
+            int idleEvicted = 0;
+            for (Map.Entry<String, Entry> entry : sequenceMap.entrySet()) {
+                if (now - entry.getValue().lastAccessNanos > idleNanos
+                        && sequenceMap.remove(entry.getKey(), entry.getValue())) {
+                    evictionListener.accept(entry.getKey(), entry.getValue().sequence);
+                    idleEvicted++;
+                }
+            }
+            idleEvictionCount.addAndGet(idleEvicted);
+            int sizeEvicted = 0;
+            if (sequenceMap.size() > maxSize) {
+                int overflow = sequenceMap.size() - lowWaterSize;
+                // 排序前先固定访问时间, 避免排序过程中被并发修改
+                List<long[]> accessOrder = new ArrayList<>(sequenceMap.size());
+                List<Map.Entry<String, Entry>> entries = new ArrayList<>(sequenceMap.entrySet());
+                for (int i = 0; i < entries.size(); i++) {
+                    accessOrder.add(new long[]{entries.get(i).getValue().lastAccessNanos, i});
+                }
+                accessOrder.sort(Comparator.comparingLong(order -> order[0]));
+                for (int i = 0; i < accessOrder.size() && sizeEvicted < overflow; i++) {
+                    Map.Entry<String, Entry> entry = entries.get((int) accessOrder.get(i)[1]);
+                    if (sequenceMap.remove(entry.getKey(), entry.getValue())) {
+                        evictionListener.accept(entry.getKey(), entry.getValue().sequence);
+                        sizeEvicted++;
+                    }
+                }
+                sizeEvictionCount.addAndGet(sizeEvicted);
+            }
+            if (idleEvicted > 0 || sizeEvicted > 0) {
+                log.info("Evicted sequences, idle = {}, overflow = {}, size = {}",
+                        idleEvicted, sizeEvicted, sequenceMap.size());
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private static class Entry {
+        private final DefaultSequence sequence;
+        private volatile long lastAccessNanos;
+
+        private Entry(DefaultSequence sequence, long lastAccessNanos) {
+            this.sequence = sequence;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+}
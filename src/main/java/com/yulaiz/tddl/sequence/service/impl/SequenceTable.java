@@ -0,0 +1,14 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+/**
+ * 序列表的表名和列名, 对应 sequence.structure.* 配置
+ *
+ * @param table          表名
+ * @param nameColumn     序列名称列
+ * @param valueColumn    序列值列
+ * @param stepColumn     步长列
+ * @param modifiedColumn 最后更新时间列
+ */
+public record SequenceTable(String table, String nameColumn, String valueColumn,
+                            String stepColumn, String modifiedColumn) {
+}
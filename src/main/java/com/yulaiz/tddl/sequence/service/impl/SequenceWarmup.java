@@ -0,0 +1,124 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动预热
+ * <p>
+ * 在应用启动时按批并行获取已知序列的第一段区间, 预热结束前 ApplicationRunner 不返回,
+ * Spring Boot 不会发布 ReadinessState.ACCEPTING_TRAFFIC, 避免重启后第一波请求集中访问数据库。
+ * 预热失败或超时只打印告警, 未预热的序列在首次访问时再获取区间
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "sequence.warmup", name = "enabled", havingValue = "true")
+@RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
+public class SequenceWarmup implements ApplicationRunner {
+    private final SequenceImpl sequence;
+    private final SequenceDao sequenceDao;
+    /**
+     * 预热的序列来源, table: 序列表中的全部序列; list: 只预热 names 中的序列
+     */
+    @Value("${sequence.warmup.source:table}")
+    private String source;
+    /**
+     * 需要预热的序列名
+     */
+    @Value("${sequence.warmup.names:}")
+    private Set<String> names;
+    /**
+     * 并行获取的批次数
+     */
+    @Value("${sequence.warmup.concurrency:4}")
+    private int concurrency;
+    /**
+     * 每批获取的序列数
+     */
+    @Value("${sequence.warmup.batch-size:100}")
+    private int batchSize;
+    /**
+     * 预热超时时间, 单位: 毫秒
+     */
+    @Value("${sequence.warmup.timeout-millis:60000}")
+    private long timeoutMillis;
+
+    private static final String SOURCE_LIST = "list";
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.currentTimeMillis();
+        Set<String> sequenceNames = new LinkedHashSet<>(names);
+        if (!SOURCE_LIST.equalsIgnoreCase(source)) {
+            try {
+                sequenceNames.addAll(sequenceDao.listSequenceNames());
+            } catch (SequenceException e) {
+                log.warn("Failed to list sequence names, warm up configured names only", e);
+            }
+        }
+        List<String> sequenceNameList = new ArrayList<>(sequenceNames);
+        // 超过缓存上限的序列预热后也会被淘汰
+        int registryMaxSize = sequence.getRegistry().getMaxSize();
+        if (sequenceNameList.size() > registryMaxSize) {
+            sequenceNameList = sequenceNameList.subList(0, registryMaxSize);
+        }
+        if (sequenceNameList.isEmpty()) {
+            return;
+        }
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread thread = new Thread(r, "sequence-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < sequenceNameList.size(); i += batchSize) {
+                List<String> batch = sequenceNameList.subList(i, Math.min(i + batchSize, sequenceNameList.size()));
+                futures.add(executor.submit(() -> {
+                    try {
+                        loaded.addAndGet(sequence.preload(batch));
+                    } catch (Exception e) {
+                        failed.addAndGet(batch.size());
+                        log.warn("Failed to warm up sequences {}", batch, e);
+                    }
+                }));
+            }
+            long deadline = start + timeoutMillis;
+            for (Future<?> future : futures) {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (TimeoutException e) {
+            log.warn("Sequence warm up timed out after {} ms", timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Sequence warm up failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Warmed up {} of {} sequences in {} ms, failed = {}",
+                loaded.get(), sequenceNameList.size(), System.currentTimeMillis() - start, failed.get());
+    }
+}
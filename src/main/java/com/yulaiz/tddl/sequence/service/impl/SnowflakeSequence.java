@@ -0,0 +1,169 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.Sequence;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于时间戳的序列, 不访问数据库
+ * <p>
+ * 64 位 = 1 位符号 + 41 位毫秒时间戳 + 10 位 workerId + 12 位毫秒内序号。
+ * workerId 由 {@link SnowflakeWorkerLease} 租用并续约, 每次取值时检查租约未到期,
+ * 之后只做一次 CAS, 不加锁。时钟回拨时继续使用上次的时间戳向后借用, 保证不重复且递增
+ */
+@Slf4j
+public class SnowflakeSequence implements Sequence {
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long WORKER_MASK = (1L << WORKER_BITS) - 1;
+    /**
+     * 时钟回拨超过该值时打印告警, 单位: 毫秒
+     */
+    private static final long BACKWARD_WARN_MILLIS = 1000;
+
+    private final WorkerIdSupplier workerIdSupplier;
+    private final long epoch;
+    private final LongSupplier clock;
+
+    /**
+     * 高位为相对 epoch 的时间戳, 低 12 位为该毫秒内已用的序号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 最近一次告警时钟回拨时的时间戳, 避免回拨期间每次取值都打印告警
+     */
+    private volatile long warnedTimestamp = -1;
+
+    /**
+     * 提供当前节点的 workerId, 不能保证独占时抛出异常
+     */
+    @FunctionalInterface
+    public interface WorkerIdSupplier {
+        long getWorkerId() throws SequenceException;
+    }
+
+    public SnowflakeSequence(WorkerIdSupplier workerIdSupplier, long epoch) {
+        this(workerIdSupplier, epoch, System::currentTimeMillis);
+    }
+
+    public SnowflakeSequence(WorkerIdSupplier workerIdSupplier, long epoch, LongSupplier clock) {
+        this.workerIdSupplier = workerIdSupplier;
+        this.epoch = epoch;
+        this.clock = clock;
+    }
+
+    /**
+     * 取得序列下一个值
+     *
+     * @param sequenceName 序列名称, 所有序列共用同一个时间戳序列
+     * @return 返回序列下一个值
+     * @throws SequenceException 获取序列失败
+     */
+    @Override
+    public long nextValue(String sequenceName) throws SequenceException {
+        long worker = getWorkerId();
+        long next = reserve(1);
+        return compose(next >>> SEQUENCE_BITS, worker, next & SEQUENCE_MASK);
+    }
+
+    @Override
+    public List<Long> nextValueList(String sequenceName, int step) throws SequenceException {
+        long[] values = new long[step];
+        nextValues(sequenceName, values, 0, step);
+        List<Long> list = new ArrayList<>(step);
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    @Override
+    public List<SequenceSegment> nextSegments(String sequenceName, int step) throws SequenceException {
+        long worker = getWorkerId();
+        List<SequenceSegment> list = new ArrayList<>(2);
+        int remaining = step;
+        while (remaining > 0) {
+            long first = reserve(remaining);
+            int count = (int) Math.min(remaining, SEQUENCE_MASK + 1 - (first & SEQUENCE_MASK));
+            long start = compose(first >>> SEQUENCE_BITS, worker, first & SEQUENCE_MASK);
+            list.add(new SequenceSegment(start, start + count - 1));
+            remaining -= count;
+        }
+        return list;
+    }
+
+    @Override
+    public void nextValues(String sequenceName, long[] values, int offset, int length) throws SequenceException {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        long worker = getWorkerId();
+        int index = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            long first = reserve(remaining);
+            int count = (int) Math.min(remaining, SEQUENCE_MASK + 1 - (first & SEQUENCE_MASK));
+            long start = compose(first >>> SEQUENCE_BITS, worker, first & SEQUENCE_MASK);
+            for (int i = 0; i < count; i++) {
+                values[index++] = start + i;
+            }
+            remaining -= count;
+        }
+    }
+
+    /**
+     * 最近一次发号使用的时间戳, 时钟回拨或单毫秒序号用完时可能大于当前时间, 单位: 毫秒
+     */
+    public long lastTimestamp() {
+        return (state.get() >>> SEQUENCE_BITS) + epoch;
+    }
+
+    /**
+     * 在同一毫秒内预留最多 size 个连续序号
+     *
+     * @return 预留的第一个状态值, 实际预留个数为 min(size, 4096 - 序号)
+     */
+    private long reserve(int size) {
+        for (; ; ) {
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long now = clock.getAsLong() - epoch;
+            long first;
+            if (now > lastTimestamp) {
+                first = now << SEQUENCE_BITS;
+            } else {
+                if (lastTimestamp - now > BACKWARD_WARN_MILLIS && warnedTimestamp != lastTimestamp) {
+                    warnedTimestamp = lastTimestamp;
+                    log.warn("Clock moved backwards, lastTimestamp = {}, now = {}", lastTimestamp, now);
+                }
+                // 同一毫秒或时钟回拨, 沿用上次的时间戳, 序号用完时借用下一毫秒
+                first = (last & SEQUENCE_MASK) == SEQUENCE_MASK
+                        ? (lastTimestamp + 1) << SEQUENCE_BITS
+                        : last + 1;
+            }
+            long count = Math.min(size, SEQUENCE_MASK + 1 - (first & SEQUENCE_MASK));
+            if (state.compareAndSet(last, first + count - 1)) {
+                return first;
+            }
+        }
+    }
+
+    private long compose(long timestamp, long worker, long sequence) {
+        return (timestamp << (WORKER_BITS + SEQUENCE_BITS)) | (worker << SEQUENCE_BITS) | sequence;
+    }
+
+    private long getWorkerId() throws SequenceException {
+        long worker = workerIdSupplier.getWorkerId();
+        if (worker < 0 || worker > WORKER_MASK) {
+            throw new SequenceException("Snowflake workerId out of range, workerId = " + worker);
+        }
+        return worker;
+    }
+}
@@ -0,0 +1,310 @@
+package com.yulaiz.tddl.sequence.service.impl;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * snowflake 的 workerId 租约
+ * <p>
+ * 每个 workerId 在 worker 表中一行, 记录持有者和到期时间。租用时先查出空闲或已过期的 id,
+ * 用带到期时间条件的 update 抢占, 表中没有的 id 直接 insert, 冲突时换下一个; 全部被占用时租用失败。
+ * 租用后每 lease-millis / 3 续约一次, 续约时发现 id 已被其他节点接手则重新租用。
+ * 续约失败时到期前 max-clock-skew-millis 停止发号, 避免与接手该 id 的节点重复。
+ * <p>
+ * 续约和释放时把最后发号的时间戳写入 last_timestamp, 接手时等本地时钟超过该值才开始发号,
+ * 释放后立即接手或接手节点的时钟落后时也不会重复; 落后超过 max-clock-skew-millis 的 id 不接手
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor(onConstructor_ = {@Lazy, @Autowired})
+public class SnowflakeWorkerLease {
+    static final int MAX_WORKERS = 1024;
+
+    private final DataSource dataSource;
+    /**
+     * worker 表名, 列为 worker_id, owner, expire_at (毫秒时间戳), last_timestamp (毫秒时间戳), gmt_modified
+     */
+    @Value("${sequence.snowflake.worker-table:sequence_worker}")
+    private String tableName;
+    /**
+     * 租约时长, 单位: 毫秒
+     */
+    @Value("${sequence.snowflake.lease-millis:60000}")
+    private long leaseMillis;
+    /**
+     * 节点间允许的最大时钟偏差, 租约到期前该时长停止发号, 单位: 毫秒
+     */
+    @Value("${sequence.snowflake.max-clock-skew-millis:1000}")
+    private long maxClockSkewMillis;
+
+    private final String owner = hostName() + ":" + ProcessHandle.current().pid()
+            + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    private volatile Lease lease;
+
+    /**
+     * 最后发号的时间戳, 未设置时只记录续约和释放的时间
+     */
+    private volatile LongSupplier lastTimestamp = () -> 0;
+
+    private ScheduledExecutorService heartbeat;
+
+    private record Lease(int workerId, long expireAt) {
+    }
+
+    /**
+     * 租用一个空闲的 workerId 并开始定时续约
+     *
+     * @return 租到的 workerId
+     * @throws SequenceException 没有空闲的 workerId 或访问数据库失败
+     */
+    public int acquire() throws SequenceException {
+        int workerId = lease();
+        if (heartbeat == null) {
+            heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "snowflake-lease");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1, leaseMillis / 3);
+            heartbeat.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+        }
+        return workerId;
+    }
+
+    /**
+     * 设置最后发号时间戳的来源, 续约和释放时写入 worker 表
+     *
+     * @param lastTimestamp 最后发号的时间戳, 单位: 毫秒
+     */
+    public void trackLastTimestamp(LongSupplier lastTimestamp) {
+        this.lastTimestamp = lastTimestamp;
+    }
+
+    /**
+     * 取得当前租用的 workerId
+     *
+     * @return workerId
+     * @throws SequenceException 未租用或租约即将到期
+     */
+    public long getWorkerId() throws SequenceException {
+        Lease current = lease;
+        if (current == null) {
+            throw new SequenceException("Snowflake workerId is not leased");
+        }
+        if (System.currentTimeMillis() >= current.expireAt() - maxClockSkewMillis) {
+            throw new SequenceException("Snowflake workerId lease expired, workerId = " + current.workerId()
+                    + ", please check table " + tableName);
+        }
+        return current.workerId();
+    }
+
+    @PreDestroy
+    public void release() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+        Lease current = lease;
+        if (current == null) {
+            return;
+        }
+        lease = null;
+        long now = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("update " + tableName +
+                     " set expire_at = 0, last_timestamp = ?, gmt_modified = ? where worker_id = ? and owner = ?")) {
+            stmt.setLong(1, Math.max(now, lastTimestamp.getAsLong()));
+            stmt.setTimestamp(2, new Timestamp(now));
+            stmt.setInt(3, current.workerId());
+            stmt.setString(4, owner);
+            stmt.executeUpdate();
+            log.info("Released snowflake workerId = {}", current.workerId());
+        } catch (SQLException e) {
+            log.warn("Failed to release snowflake workerId = {}", current.workerId(), e);
+        }
+    }
+
+    private int lease() throws SequenceException {
+        try (Connection conn = dataSource.getConnection()) {
+            long now = System.currentTimeMillis();
+            List<Integer> expired = new ArrayList<>();
+            Set<Integer> existing = new HashSet<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "select worker_id, expire_at, last_timestamp from " + tableName);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getInt(1));
+                    if (rs.getLong(2) >= now) {
+                        continue;
+                    }
+                    if (rs.getLong(3) - now > maxClockSkewMillis) {
+                        log.warn("Skip snowflake workerId = {}, local clock is {}ms behind its last timestamp",
+                                rs.getInt(1), rs.getLong(3) - now);
+                        continue;
+                    }
+                    expired.add(rs.getInt(1));
+                }
+            }
+            // 多个节点同时启动时从不同位置开始尝试, 减少冲突
+            Collections.shuffle(expired);
+            for (int workerId : expired) {
+                long last = tryTakeOver(conn, workerId);
+                if (last >= 0) {
+                    waitUntilPassed(workerId, last);
+                    return leased(workerId);
+                }
+            }
+            int start = ThreadLocalRandom.current().nextInt(MAX_WORKERS);
+            for (int i = 0; i < MAX_WORKERS; i++) {
+                int workerId = (start + i) % MAX_WORKERS;
+                if (!existing.contains(workerId) && tryInsert(conn, workerId)) {
+                    return leased(workerId);
+                }
+            }
+        } catch (SQLException e) {
+            throw new SequenceException(e);
+        }
+        throw new SequenceException("No free snowflake workerId, all " + MAX_WORKERS
+                + " workerIds are leased, please check table " + tableName);
+    }
+
+    private int leased(int workerId) {
+        lease = new Lease(workerId, System.currentTimeMillis() + leaseMillis);
+        log.info("Leased snowflake workerId = {}, owner = {}", workerId, owner);
+        return workerId;
+    }
+
+    /**
+     * 抢占已过期的 id
+     *
+     * @return 抢占成功时返回上一个持有者最后发号的时间戳, 失败时返回 -1
+     */
+    private long tryTakeOver(Connection conn, int workerId) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement("update " + tableName +
+                " set owner = ?, expire_at = ?, gmt_modified = ? where worker_id = ? and expire_at < ?")) {
+            stmt.setString(1, owner);
+            stmt.setLong(2, now + leaseMillis);
+            stmt.setTimestamp(3, new Timestamp(now));
+            stmt.setInt(4, workerId);
+            stmt.setLong(5, now);
+            if (stmt.executeUpdate() != 1) {
+                return -1;
+            }
+        }
+        // 抢占成功后行不会再被其他节点修改, 读到的就是上一个持有者写入的值
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "select last_timestamp from " + tableName + " where worker_id = ?")) {
+            stmt.setInt(1, workerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * 等本地时钟超过上一个持有者最后发号的时间戳, 等待时长不超过 max-clock-skew-millis
+     */
+    private void waitUntilPassed(int workerId, long last) throws SequenceException {
+        long behind = last - System.currentTimeMillis();
+        if (behind < 0) {
+            return;
+        }
+        log.warn("Local clock is {}ms behind the last timestamp of snowflake workerId = {}, waiting", behind, workerId);
+        try {
+            while (System.currentTimeMillis() <= last) {
+                Thread.sleep(Math.max(1, last - System.currentTimeMillis() + 1));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SequenceException("Interrupted while waiting for the clock, workerId = " + workerId, e);
+        }
+    }
+
+    private boolean tryInsert(Connection conn, int workerId) throws SQLException {
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement("insert into " + tableName +
+                " (worker_id, owner, expire_at, last_timestamp, gmt_modified) values (?, ?, ?, 0, ?)")) {
+            stmt.setInt(1, workerId);
+            stmt.setString(2, owner);
+            stmt.setLong(3, now + leaseMillis);
+            stmt.setTimestamp(4, new Timestamp(now));
+            return stmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            // 其他节点同时插入了该 id
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 续约, 到期时间从发出 update 之前算起; id 被其他节点接手时重新租用
+     */
+    void renew() {
+        Lease current = lease;
+        if (current == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("update " + tableName +
+                     " set expire_at = ?, last_timestamp = ?, gmt_modified = ? where worker_id = ? and owner = ?")) {
+            stmt.setLong(1, now + leaseMillis);
+            stmt.setLong(2, Math.max(now, lastTimestamp.getAsLong()));
+            stmt.setTimestamp(3, new Timestamp(now));
+            stmt.setInt(4, current.workerId());
+            stmt.setString(5, owner);
+            if (stmt.executeUpdate() == 1) {
+                lease = new Lease(current.workerId(), now + leaseMillis);
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to renew snowflake workerId = {}, lease expires at {}",
+                    current.workerId(), current.expireAt(), e);
+            return;
+        }
+        log.error("Snowflake workerId = {} was taken over by another node, leasing a new one", current.workerId());
+        lease = null;
+        try {
+            lease();
+        } catch (SequenceException e) {
+            log.error("Failed to lease a new snowflake workerId", e);
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
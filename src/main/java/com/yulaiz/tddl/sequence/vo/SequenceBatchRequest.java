@@ -0,0 +1,18 @@
+package com.yulaiz.tddl.sequence.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 批量请求中的一项, 从 sequenceName 取 count 个值
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SequenceBatchRequest implements Serializable {
+    private String sequenceName;
+    private Integer count;
+}
@@ -0,0 +1,19 @@
+package com.yulaiz.tddl.sequence.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量请求中一项的结果, 与请求按顺序一一对应
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SequenceBatchResult implements Serializable {
+    private String sequenceName;
+    private List<Long> values;
+}
@@ -20,7 +20,21 @@ public class SequenceRange {
         this.value = new AtomicLong(min);
     }
 
+    /**
+     * 区间内剩余的值个数
+     */
+    public long getRemaining() {
+        if (over) {
+            return 0;
+        }
+        return Math.max(0, max - value.get() + 1);
+    }
+
     public long getAndIncrement() {
+        // 已用完的区间不再自增, 避免计数被持续推高
+        if (over) {
+            return -1;
+        }
         long currentValue = value.getAndIncrement();
         if (currentValue > max) {
             over = true;
@@ -29,4 +43,27 @@ public class SequenceRange {
         return currentValue;
     }
 
+    /**
+     * 一次取出最多 size 个连续的值
+     *
+     * @param size 需要的个数
+     * @return 取出的第一个值, 实际取出个数为 min(size, max - 返回值 + 1), 区间已用完时返回 -1
+     */
+    public long getAndAdd(long size) {
+        if (over) {
+            return -1;
+        }
+        for (; ; ) {
+            long currentValue = value.get();
+            if (currentValue > max) {
+                over = true;
+                return -1;
+            }
+            long nextValue = currentValue + Math.min(size, max - currentValue + 1);
+            if (value.compareAndSet(currentValue, nextValue)) {
+                return currentValue;
+            }
+        }
+    }
+
 }
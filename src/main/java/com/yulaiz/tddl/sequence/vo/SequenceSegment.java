@@ -0,0 +1,18 @@
+package com.yulaiz.tddl.sequence.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 一段连续的序列值 [start, end]
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SequenceSegment implements Serializable {
+    private long start;
+    private long end;
+}
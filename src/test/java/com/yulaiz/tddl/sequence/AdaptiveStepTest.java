@@ -0,0 +1,87 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.service.impl.AdaptiveStep;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class AdaptiveStepTest {
+    private final AtomicLong clock = new AtomicLong();
+    private long value;
+
+    @Test
+    void noSampleTest() {
+        AdaptiveStep adaptiveStep = new AdaptiveStep(10, 100000, 100, clock::get);
+        Assertions.assertEquals(0, adaptiveStep.nextSize());
+        // 只有一次获取时还没有间隔
+        refill(adaptiveStep, 0, 1000);
+        Assertions.assertEquals(0, adaptiveStep.nextSize());
+    }
+
+    @Test
+    void ewmaTest() {
+        AdaptiveStep adaptiveStep = new AdaptiveStep(10, 100000, 100, clock::get);
+        refill(adaptiveStep, 0, 1000);
+        // 100ms 用完 1000 个, 速度 10 个/ms, 目标 100ms 取 1000 个
+        refill(adaptiveStep, 100, 1000);
+        Assertions.assertEquals(1000, adaptiveStep.nextSize(), 1);
+        // 50ms 用完 1000 个, 速度 20 个/ms, 平均 0.3 * 20 + 0.7 * 10 = 13 个/ms
+        refill(adaptiveStep, 50, 1000);
+        Assertions.assertEquals(1300, adaptiveStep.nextSize(), 1);
+    }
+
+    @Test
+    void growClampTest() {
+        AdaptiveStep adaptiveStep = new AdaptiveStep(10, 100000, 1000, clock::get);
+        refill(adaptiveStep, 0, 100);
+        // 10ms 用完 100 个, 目标大小 10000, 单次最多放大一倍
+        refill(adaptiveStep, 10, 100);
+        int size = adaptiveStep.nextSize();
+        Assertions.assertEquals(200, size);
+        for (int i = 0; i < 3; i++) {
+            refill(adaptiveStep, 10, size);
+            int next = adaptiveStep.nextSize();
+            Assertions.assertEquals(size * 2, next);
+            size = next;
+        }
+    }
+
+    @Test
+    void shrinkClampTest() {
+        AdaptiveStep adaptiveStep = new AdaptiveStep(10, 100000, 10, clock::get);
+        refill(adaptiveStep, 0, 8000);
+        // 1s 用完 8000 个, 目标大小 80, 单次最多缩小一半
+        refill(adaptiveStep, 1000, 8000);
+        int size = adaptiveStep.nextSize();
+        Assertions.assertEquals(4000, size);
+        refill(adaptiveStep, 1000, size);
+        Assertions.assertEquals(2000, adaptiveStep.nextSize());
+    }
+
+    @Test
+    void boundsTest() {
+        AdaptiveStep adaptiveStep = new AdaptiveStep(500, 1500, 1000, clock::get);
+        refill(adaptiveStep, 0, 1000);
+        // 目标大小 1000000, 放大一倍后仍受 maxStep 限制
+        refill(adaptiveStep, 1, 1000);
+        Assertions.assertEquals(1500, adaptiveStep.nextSize());
+
+        adaptiveStep = new AdaptiveStep(500, 1500, 1, clock::get);
+        refill(adaptiveStep, 0, 600);
+        // 目标大小接近 0, 缩小一半后仍受 minStep 限制
+        refill(adaptiveStep, 10000, 600);
+        Assertions.assertEquals(500, adaptiveStep.nextSize());
+    }
+
+    /**
+     * 时钟前进 elapsedMillis 后获取一段大小为 size 的区间
+     */
+    private void refill(AdaptiveStep adaptiveStep, long elapsedMillis, long size) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+        adaptiveStep.onRefill(new SequenceRange(value + 1, value + size));
+        value += size;
+    }
+}
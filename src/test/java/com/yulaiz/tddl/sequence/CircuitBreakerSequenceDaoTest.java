@@ -0,0 +1,224 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceRetryExhaustedException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.CircuitBreakerSequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.RefillConnections;
+import com.yulaiz.tddl.sequence.service.impl.SequenceOptions;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CircuitBreakerSequenceDaoTest {
+    private static final String sequenceName = "breaker_seq";
+
+    @Test
+    void openAndRecoverTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        AtomicInteger calls = new AtomicInteger();
+        SequenceDao countingDao = new SequenceDao() {
+            @Override
+            public SequenceRange nextRange(String sequenceName) throws SequenceException {
+                return nextRange(sequenceName, 0);
+            }
+
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                calls.incrementAndGet();
+                return dao.nextRange(sequenceName, requestedSize);
+            }
+        };
+        CircuitBreakerSequenceDao breaker = new CircuitBreakerSequenceDao(countingDao, 3, 200, 0);
+        dao.setAvailable(false);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThrows(SequenceException.class, () -> breaker.nextRange(sequenceName));
+        }
+        Assertions.assertTrue(breaker.isOpen());
+        // 熔断中直接失败, 不再访问数据库
+        SequenceException e = Assertions.assertThrows(SequenceException.class, () -> breaker.nextRange(sequenceName));
+        Assertions.assertTrue(e.getMessage().contains("circuit is open"));
+        Assertions.assertEquals(3, calls.get());
+
+        dao.setAvailable(true);
+        TimeUnit.MILLISECONDS.sleep(250);
+        Assertions.assertEquals(1, breaker.nextRange(sequenceName).getMin());
+        Assertions.assertFalse(breaker.isOpen());
+        Assertions.assertEquals(4, calls.get());
+    }
+
+    @Test
+    void failedProbeReopensTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        CircuitBreakerSequenceDao breaker = new CircuitBreakerSequenceDao(dao, 1, 100, 0);
+        dao.setAvailable(false);
+        Assertions.assertThrows(SequenceException.class, () -> breaker.nextRange(sequenceName));
+        TimeUnit.MILLISECONDS.sleep(150);
+        Assertions.assertFalse(breaker.isOpen());
+        // 试探失败后重新熔断
+        Assertions.assertThrows(SequenceException.class, () -> breaker.nextRange(sequenceName));
+        Assertions.assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void probeErrorTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        AtomicInteger errors = new AtomicInteger(2);
+        SequenceDao errorDao = new SequenceDao() {
+            @Override
+            public SequenceRange nextRange(String sequenceName) throws SequenceException {
+                return nextRange(sequenceName, 0);
+            }
+
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                if (errors.getAndDecrement() == 1) {
+                    throw new StackOverflowError();
+                }
+                return dao.nextRange(sequenceName, requestedSize);
+            }
+        };
+        CircuitBreakerSequenceDao breaker = new CircuitBreakerSequenceDao(errorDao, 1, 100, 0);
+        dao.setAvailable(false);
+        Assertions.assertThrows(SequenceException.class, () -> breaker.nextRange(sequenceName));
+        dao.setAvailable(true);
+        TimeUnit.MILLISECONDS.sleep(150);
+        // 试探请求抛出 Error 后仍然放行下一次试探
+        Assertions.assertThrows(StackOverflowError.class, () -> breaker.nextRange(sequenceName));
+        Assertions.assertNotNull(breaker.nextRange(sequenceName));
+        Assertions.assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void retryExhaustedCountsAsFailureTest() throws Exception {
+        SequenceDao conflictDao = new SequenceDao() {
+            @Override
+            public SequenceRange nextRange(String sequenceName) throws SequenceException {
+                return nextRange(sequenceName, 0);
+            }
+
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                throw new SequenceRetryExhaustedException(150);
+            }
+        };
+        CircuitBreakerSequenceDao breaker = new CircuitBreakerSequenceDao(conflictDao, 2, 1000, 0);
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertThrows(SequenceRetryExhaustedException.class, () -> breaker.nextRange(sequenceName));
+        }
+        Assertions.assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void refillConnectionTimeoutCountsAsFailureTest() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:breaker_refill", "sa", "");
+        try (RefillConnections refillConnections = new RefillConnections(dataSource, 1, 20, 0)) {
+            SequenceDao refillDao = new SequenceDao() {
+                @Override
+                public SequenceRange nextRange(String sequenceName) throws SequenceException {
+                    return nextRange(sequenceName, 0);
+                }
+
+                @Override
+                public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                    try {
+                        return refillConnections.execute(c -> new SequenceRange(1, 100));
+                    } catch (SQLException e) {
+                        throw new SequenceUnavailableException(e);
+                    }
+                }
+            };
+            CountDownLatch borrowed = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Boolean> holder = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return refillConnections.execute(c -> {
+                        borrowed.countDown();
+                        try {
+                            return release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new SequenceException(e);
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Assertions.assertTrue(borrowed.await(10, TimeUnit.SECONDS));
+            CircuitBreakerSequenceDao breaker = new CircuitBreakerSequenceDao(refillDao, 2, 1000, 0);
+            // 等待专用连接超时没有 cause, 同样计为失败
+            for (int i = 0; i < 2; i++) {
+                SequenceException e = Assertions.assertThrows(SequenceException.class,
+                        () -> breaker.nextRange(sequenceName));
+                Assertions.assertNull(e.getCause());
+                Assertions.assertTrue(e.getMessage().contains("Timed out waiting for refill connection"));
+            }
+            Assertions.assertTrue(breaker.isOpen());
+            release.countDown();
+            Assertions.assertTrue(holder.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void slowCallCountsAsFailureTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100, 20_000);
+        CircuitBreakerSequenceDao breaker = new CircuitBreakerSequenceDao(dao, 2, 1000, 10);
+        // 慢调用仍然返回区间, 但计为失败
+        Assertions.assertNotNull(breaker.nextRange(sequenceName));
+        Assertions.assertNotNull(breaker.nextRange(sequenceName));
+        Assertions.assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void refillWaitTimeoutTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100, 500_000);
+        SequenceOptions options = new SequenceOptions();
+        options.setRefillWaitTimeoutMillis(50);
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName, options);
+        CompletableFuture<Long> loading = CompletableFuture.supplyAsync(() -> {
+            try {
+                return sequence.nextValue();
+            } catch (SequenceException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+        long start = System.nanoTime();
+        SequenceException e = Assertions.assertThrows(SequenceException.class, sequence::nextValue);
+        Assertions.assertTrue(e.getMessage().contains("Timed out"));
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+        Assertions.assertEquals(1, loading.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void maxRefillWaitersTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100, 300_000);
+        SequenceOptions options = new SequenceOptions();
+        options.setMaxRefillWaiters(1);
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName, options);
+        CompletableFuture<?>[] futures = new CompletableFuture[2];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return sequence.nextValue();
+                } catch (SequenceException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        // 一个线程在切换, 一个线程在等待, 第三个线程直接失败
+        SequenceException e = Assertions.assertThrows(SequenceException.class, sequence::nextValue);
+        Assertions.assertTrue(e.getMessage().contains("Too many threads"));
+        CompletableFuture.allOf(futures).get(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,175 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.CoalescingSequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+class CoalescingSequenceDaoTest {
+
+    @Test
+    void multiSequenceCoalesceTest() throws Exception {
+        int nThreads = 100;
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CoalescingSequenceDao coalescingDao = new CoalescingSequenceDao(dao, scheduler, 20_000, 1000, 0);
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SequenceRange>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            // 每个序列有两个并发请求
+            String sequenceName = "seq_" + (i % 50);
+            futures.add(es.submit(() -> {
+                start.await();
+                return coalescingDao.nextRange(sequenceName);
+            }));
+        }
+        start.countDown();
+        Set<String> ranges = new HashSet<>();
+        for (int i = 0; i < nThreads; i++) {
+            SequenceRange range = futures.get(i).get(1, TimeUnit.MINUTES);
+            Assertions.assertEquals(100, range.getMax() - range.getMin() + 1);
+            Assertions.assertTrue(ranges.add("seq_" + (i % 50) + ":" + range.getMin()),
+                    "duplicate range: " + range.getMin());
+        }
+        es.shutdown();
+        scheduler.shutdown();
+        log.debug("batchCount:{}, refillCount:{}", dao.getBatchCount(), dao.getRefillCount());
+        Assertions.assertEquals(nThreads, dao.getRefillCount());
+        Assertions.assertTrue(dao.getBatchCount() < nThreads / 2);
+    }
+
+    @Test
+    void missingSequenceTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100) {
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                if ("missing".equals(sequenceName)) {
+                    throw new SequenceException("Sequence does not exist, sequenceName = " + sequenceName);
+                }
+                return super.nextRange(sequenceName, requestedSize);
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CoalescingSequenceDao coalescingDao = new CoalescingSequenceDao(dao, scheduler, 1_000_000, 11, 0);
+        ExecutorService es = Executors.newFixedThreadPool(11);
+        List<Future<SequenceRange>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String sequenceName = "seq_" + i;
+            futures.add(es.submit(() -> coalescingDao.nextRange(sequenceName)));
+        }
+        Future<SequenceRange> missing = es.submit(() -> coalescingDao.nextRange("missing"));
+        // 整批失败后逐个获取, 只有不存在的序列失败
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> missing.get(1, TimeUnit.MINUTES));
+        Assertions.assertInstanceOf(SequenceException.class, e.getCause());
+        for (Future<SequenceRange> future : futures) {
+            SequenceRange range = future.get(1, TimeUnit.MINUTES);
+            Assertions.assertEquals(100, range.getMax() - range.getMin() + 1);
+        }
+        Assertions.assertEquals(1, dao.getBatchCount());
+        es.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void parallelFallbackTest() throws Exception {
+        int nThreads = 10;
+        CountDownLatch fallback = new CountDownLatch(nThreads);
+        MemorySequenceDao dao = new MemorySequenceDao(100) {
+            @Override
+            public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes)
+                    throws SequenceException {
+                throw new SequenceException("batch failed");
+            }
+
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                // 全部单独获取同时进行时才能通过, 在合并线程中串行执行会超时
+                fallback.countDown();
+                try {
+                    if (!fallback.await(10, TimeUnit.SECONDS)) {
+                        throw new SequenceException("single requests are not parallel");
+                    }
+                } catch (InterruptedException e) {
+                    throw new SequenceException(e);
+                }
+                return super.nextRange(sequenceName, requestedSize);
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CoalescingSequenceDao coalescingDao = new CoalescingSequenceDao(dao, scheduler, 1_000_000, nThreads, 0);
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        List<Future<SequenceRange>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            String sequenceName = "seq_" + i;
+            futures.add(es.submit(() -> coalescingDao.nextRange(sequenceName)));
+        }
+        for (Future<SequenceRange> future : futures) {
+            Assertions.assertEquals(1, future.get(1, TimeUnit.MINUTES).getMin());
+        }
+        es.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void waitTimeoutTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MemorySequenceDao dao = new MemorySequenceDao(100) {
+            @Override
+            public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes)
+                    throws SequenceException {
+                try {
+                    release.await(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    throw new SequenceException(e);
+                }
+                return super.nextRanges(requestedSizes);
+            }
+        };
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        CoalescingSequenceDao coalescingDao = new CoalescingSequenceDao(dao, scheduler, 1_000, 100, 200);
+        long start = System.nanoTime();
+        SequenceException e = Assertions.assertThrows(SequenceException.class,
+                () -> coalescingDao.nextRange("seq"));
+        Assertions.assertTrue(e.getMessage().startsWith("Timed out waiting for coalesced range"));
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        release.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void closeFailsPendingTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        // 窗口足够长, 请求在关闭前不会发出
+        CoalescingSequenceDao coalescingDao = new CoalescingSequenceDao(dao, scheduler, 60_000_000, 100, 0);
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        Future<SequenceRange> future = es.submit(() -> coalescingDao.nextRange("seq"));
+        Thread.sleep(200);
+        coalescingDao.close();
+        scheduler.shutdownNow();
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                () -> future.get(10, TimeUnit.SECONDS));
+        Assertions.assertInstanceOf(SequenceException.class, e.getCause());
+        Assertions.assertThrows(SequenceException.class, () -> coalescingDao.nextRange("seq"));
+        Assertions.assertEquals(0, dao.getBatchCount());
+        es.shutdown();
+    }
+}
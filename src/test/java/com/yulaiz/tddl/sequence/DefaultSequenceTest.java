@@ -0,0 +1,211 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.SequenceOptions;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+class DefaultSequenceTest {
+    private static final String sequenceName = "tddl_test_seq";
+
+    /**
+     * 多线程并发取值, 区间很小以频繁触发区间切换, 校验无重复且无跳号
+     */
+    private void concurrentUniqueTest(DefaultSequence sequence, MemorySequenceDao dao,
+                                      int nThreads, int times) throws Exception {
+        concurrentUniqueTest(sequence, dao, nThreads, times, true);
+    }
+
+    private void concurrentUniqueTest(DefaultSequence sequence, MemorySequenceDao dao,
+                                      int nThreads, int times, boolean gapless) throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        Future<?>[] futures = new Future[nThreads];
+        long[][] values = new long[nThreads][times];
+        for (int i = 0; i < nThreads; i++) {
+            int index = i;
+            futures[i] = es.submit(() -> {
+                start.await();
+                for (int j = 0; j < times; j++) {
+                    values[index][j] = sequence.nextValue();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        es.shutdown();
+        Set<Long> set = new HashSet<>();
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long[] threadValues : values) {
+            for (long value : threadValues) {
+                Assertions.assertTrue(set.add(value), "duplicate value: " + value);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        log.debug("refillCount:{}, min:{}, max:{}", dao.getRefillCount(), min, max);
+        Assertions.assertEquals((long) nThreads * times, set.size());
+        if (gapless) {
+            Assertions.assertEquals(set.size() - 1, max - min);
+        }
+    }
+
+    @Test
+    void multiThreadRolloverTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(10);
+        concurrentUniqueTest(new DefaultSequence(dao, sequenceName), dao, 64, 5000);
+    }
+
+    @Test
+    void multiThreadRolloverWithLatencyTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100, 200);
+        concurrentUniqueTest(new DefaultSequence(dao, sequenceName), dao, 128, 1000);
+    }
+
+    @Test
+    void multiThreadPrefetchTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100, 200);
+        ExecutorService refillExecutor = Executors.newSingleThreadExecutor();
+        SequenceOptions options = new SequenceOptions();
+        options.setRefillExecutor(refillExecutor);
+        options.setPrefetchWatermark(0.5);
+        try {
+            concurrentUniqueTest(new DefaultSequence(dao, sequenceName, options), dao, 64, 2000);
+        } finally {
+            refillExecutor.shutdown();
+        }
+    }
+
+    @Test
+    void prefetchWatermarkTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100, 200_000);
+        // 预取任务先排队, 由测试线程手动执行
+        List<Runnable> tasks = new ArrayList<>();
+        SequenceOptions options = new SequenceOptions();
+        options.setRefillExecutor(tasks::add);
+        options.setPrefetchWatermark(0.2);
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName, options);
+        for (int i = 1; i <= 80; i++) {
+            Assertions.assertEquals(i, sequence.nextValue());
+        }
+        Assertions.assertTrue(tasks.isEmpty());
+        // 剩余 19 个, 低于水位 20% 时提交预取
+        Assertions.assertEquals(81, sequence.nextValue());
+        Assertions.assertEquals(1, tasks.size());
+        for (int i = 82; i <= 100; i++) {
+            Assertions.assertEquals(i, sequence.nextValue());
+        }
+        // 预取未完成前不重复提交
+        Assertions.assertEquals(1, tasks.size());
+        Assertions.assertEquals(1, dao.getRefillCount());
+        tasks.get(0).run();
+        Assertions.assertEquals(2, dao.getRefillCount());
+
+        // 切换时直接使用预取的区间, 不再访问 200ms 延迟的数据库
+        long start = System.nanoTime();
+        Assertions.assertEquals(101, sequence.nextValue());
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        Assertions.assertEquals(2, dao.getRefillCount());
+    }
+
+    @Test
+    void nextSegmentsOverflowTest() throws Exception {
+        SequenceDao dao = new SequenceDao() {
+            @Override
+            public SequenceRange nextRange(String sequenceName) {
+                return nextRange(sequenceName, 0);
+            }
+
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) {
+                return new SequenceRange(Long.MAX_VALUE - 9, Long.MAX_VALUE);
+            }
+        };
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName);
+        Assertions.assertEquals(Long.MAX_VALUE, sequence.nextSegments(10).get(0).getEnd());
+        // 用完上限为 Long.MAX_VALUE 的区间后计数溢出, 不能返回负数
+        SequenceException e = Assertions.assertThrows(SequenceException.class, () -> sequence.nextSegments(5));
+        Assertions.assertTrue(e.getMessage().contains("overflow"), e.getMessage());
+        Assertions.assertThrows(SequenceException.class, () -> sequence.nextValues(new long[1], 0, 1));
+    }
+
+    @Test
+    void nextValueListSpillTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName);
+        long value = sequence.nextValue();
+        List<Long> list = sequence.nextValueList(250);
+        long nextValue = sequence.nextValue();
+        Assertions.assertEquals(250, list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Assertions.assertEquals(value + 1 + i, list.get(i));
+        }
+        Assertions.assertEquals(value + 251, nextValue);
+        Assertions.assertEquals(3, dao.getRefillCount());
+    }
+
+    @Test
+    void multiThreadContiguousListTest() throws Exception {
+        int nThreads = 32;
+        int times = 100;
+        MemorySequenceDao dao = new MemorySequenceDao(1_000_000);
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName);
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads * times; i++) {
+            int size = i % 50 + 1;
+            futures.add(es.submit(() -> sequence.nextValueList(size)));
+        }
+        Set<Long> set = new HashSet<>();
+        long sum = 0;
+        for (Future<List<Long>> future : futures) {
+            List<Long> list = future.get(1, TimeUnit.MINUTES);
+            // 同一区间内切出的一批值是连续的
+            Assertions.assertEquals(list.size() - 1, list.get(list.size() - 1) - list.get(0));
+            set.addAll(list);
+            sum += list.size();
+        }
+        es.shutdown();
+        Assertions.assertEquals(sum, set.size());
+    }
+
+    /**
+     * 分段模式下只保证唯一, 同一分段并发切出子区间时会留下空洞
+     */
+    @Test
+    void multiThreadStripedTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        SequenceOptions options = new SequenceOptions().withStripes(4, 8);
+        concurrentUniqueTest(new DefaultSequence(dao, sequenceName, options), dao, 64, 5000, false);
+    }
+
+    @Test
+    void stripedRefillFromParentTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        DefaultSequence sequence = new DefaultSequence(dao, sequenceName, new SequenceOptions().withStripes(1, 8));
+        for (long i = 1; i <= 250; i++) {
+            Assertions.assertEquals(i, sequence.nextValue());
+        }
+        // 单个分段时子区间依次从当前区间切出, 每段区间只访问一次数据库
+        Assertions.assertEquals(3, dao.getRefillCount());
+    }
+}
@@ -0,0 +1,202 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.FileSequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+class FileSequenceDaoTest {
+    private static final String sequenceName = "file_seq";
+    private static final int step = 100;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void continueAfterReopenTest() throws Exception {
+        Path path = tempDir.resolve("sequence.dat");
+        FileSequenceDao sequenceDao = new FileSequenceDao(path, 16, true, step);
+        for (int i = 0; i < 10; i++) {
+            SequenceRange range = sequenceDao.nextRange(sequenceName);
+            Assertions.assertEquals((long) i * step + 1, range.getMin());
+            Assertions.assertEquals((long) (i + 1) * step, range.getMax());
+        }
+        SequenceRange range = sequenceDao.nextRange(sequenceName, 10);
+        Assertions.assertEquals(1001, range.getMin());
+        Assertions.assertEquals(1010, range.getMax());
+        sequenceDao.destroy();
+
+        sequenceDao = new FileSequenceDao(path, 16, true, step);
+        Assertions.assertEquals(List.of(sequenceName), sequenceDao.listSequenceNames());
+        Assertions.assertEquals(1011, sequenceDao.nextRange(sequenceName).getMin());
+        sequenceDao.destroy();
+    }
+
+    @Test
+    void lockedFileTest() throws Exception {
+        Path path = tempDir.resolve("locked.dat");
+        FileSequenceDao sequenceDao = new FileSequenceDao(path, 4, true, step);
+        Assertions.assertEquals(1, sequenceDao.nextRange(sequenceName).getMin());
+        // 同一个文件不能被第二个实例打开, 否则两边会从相同的值发号
+        Assertions.assertThrows(IOException.class, () -> new FileSequenceDao(path, 4, true, step));
+        sequenceDao.destroy();
+
+        sequenceDao = new FileSequenceDao(path, 4, true, step);
+        Assertions.assertEquals(step + 1, sequenceDao.nextRange(sequenceName).getMin());
+        sequenceDao.destroy();
+    }
+
+    @Test
+    void tornWriteTest() throws Exception {
+        Path path = tempDir.resolve("torn.dat");
+        FileSequenceDao sequenceDao = new FileSequenceDao(path, 4, true, step);
+        // 新建写入第 1 份记录, 之后两次更新依次写入第 2 份和第 1 份
+        sequenceDao.nextRange(sequenceName);
+        sequenceDao.nextRange(sequenceName);
+        sequenceDao.destroy();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // 模拟写第 2 份记录时崩溃: 版本号和值已写入, 校验和未写入
+            file.seek(16 + 128);
+            file.writeLong(99);
+            file.writeLong(999_999);
+        }
+        sequenceDao = new FileSequenceDao(path, 4, true, step);
+        Assertions.assertEquals(2 * step + 1, sequenceDao.nextRange(sequenceName).getMin());
+        sequenceDao.destroy();
+    }
+
+    @Test
+    void writeAfterPreviousFlushTest() throws Exception {
+        Path path = tempDir.resolve("pending.dat");
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blockNextFlush = new AtomicBoolean();
+        AtomicReference<byte[]> durableSlot = new AtomicReference<>();
+        FileSequenceDao sequenceDao = new FileSequenceDao(path, 4, true, step) {
+            @Override
+            protected void force() {
+                if (blockNextFlush.compareAndSet(true, false)) {
+                    flushing.countDown();
+                    try {
+                        release.await(1, TimeUnit.MINUTES);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.force();
+                durableSlot.set(readSlot(path));
+            }
+        };
+        SequenceRange returned = sequenceDao.nextRange(sequenceName);
+        blockNextFlush.set(true);
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        Future<SequenceRange> first = es.submit(() -> sequenceDao.nextRange(sequenceName));
+        Assertions.assertTrue(flushing.await(1, TimeUnit.MINUTES));
+        Future<SequenceRange> second = es.submit(() -> sequenceDao.nextRange(sequenceName));
+        // 第二次写入同一槽必须等第一次刷盘, 给它足够的时间去覆盖另一份记录
+        Thread.sleep(200);
+        byte[] pending = readSlot(path);
+        byte[] durable = durableSlot.get();
+        release.countDown();
+        Assertions.assertEquals(returned.getMax() + 1, first.get(1, TimeUnit.MINUTES).getMin());
+        Assertions.assertEquals(returned.getMax() + step + 1, second.get(1, TimeUnit.MINUTES).getMin());
+        es.shutdown();
+        sequenceDao.destroy();
+
+        // 模拟刷盘中途断电: 最新的一份只写了一半, 另一份停留在上次刷盘的内容
+        ByteBuffer slot = ByteBuffer.wrap(pending);
+        int newest = slot.getLong(0) > slot.getLong(128) ? 0 : 1;
+        System.arraycopy(durable, (1 - newest) * 128, pending, (1 - newest) * 128, 128);
+        pending[newest * 128 + 8] ^= 0x7F;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(16);
+            file.write(pending);
+        }
+        FileSequenceDao reopened = new FileSequenceDao(path, 4, true, step);
+        // 回退到已返回的区间之后, 不会重复发号
+        Assertions.assertEquals(returned.getMax() + 1, reopened.nextRange(sequenceName).getMin());
+        reopened.destroy();
+    }
+
+    private static byte[] readSlot(Path path) {
+        try {
+            return Arrays.copyOfRange(Files.readAllBytes(path), 16, 16 + 256);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    void corruptedSlotDisablesAutoCreateTest() throws Exception {
+        Path path = tempDir.resolve("corrupted.dat");
+        FileSequenceDao sequenceDao = new FileSequenceDao(path, 4, true, step);
+        sequenceDao.nextRange(sequenceName);
+        sequenceDao.destroy();
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // 两份记录都损坏
+            file.seek(16 + 8);
+            file.writeLong(12345);
+            file.seek(16 + 128 + 8);
+            file.writeLong(12345);
+        }
+        FileSequenceDao reopened = new FileSequenceDao(path, 4, true, step);
+        // 不能从头重新创建同名序列
+        Assertions.assertThrows(SequenceException.class, () -> reopened.nextRange(sequenceName));
+        reopened.destroy();
+    }
+
+    @Test
+    void createTest() throws Exception {
+        FileSequenceDao sequenceDao = new FileSequenceDao(tempDir.resolve("create.dat"), 4, false, step);
+        Assertions.assertThrows(SequenceException.class, () -> sequenceDao.nextRange(sequenceName));
+        Assertions.assertTrue(sequenceDao.create(sequenceName, 5000, 10));
+        Assertions.assertFalse(sequenceDao.create(sequenceName, 0, 10));
+        SequenceRange range = sequenceDao.nextRange(sequenceName);
+        Assertions.assertEquals(5001, range.getMin());
+        Assertions.assertEquals(5010, range.getMax());
+        Map<String, SequenceRange> ranges = sequenceDao.nextRanges(List.of(sequenceName));
+        Assertions.assertEquals(5011, ranges.get(sequenceName).getMin());
+        sequenceDao.destroy();
+    }
+
+    @Test
+    void concurrentGroupCommitTest() throws Exception {
+        FileSequenceDao sequenceDao = new FileSequenceDao(tempDir.resolve("concurrent.dat"), 16, true, step);
+        int nThreads = 8;
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        List<Future<SequenceRange>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads * 100; i++) {
+            futures.add(es.submit(() -> sequenceDao.nextRange(sequenceName)));
+        }
+        List<SequenceRange> ranges = new ArrayList<>();
+        for (Future<SequenceRange> future : futures) {
+            ranges.add(future.get(1, TimeUnit.MINUTES));
+        }
+        es.shutdown();
+        ranges.sort((a, b) -> Long.compare(a.getMin(), b.getMin()));
+        for (int i = 0; i < ranges.size(); i++) {
+            Assertions.assertEquals((long) i * step + 1, ranges.get(i).getMin());
+        }
+        sequenceDao.destroy();
+    }
+}
@@ -0,0 +1,135 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.GroupSequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.GroupSequenceProperties;
+import com.yulaiz.tddl.sequence.service.impl.SequenceMetrics;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:group_primary;MODE=MySQL;NON_KEYWORDS=VALUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "sequence.group.enabled=true",
+        "sequence.group.selector=round-robin",
+        "sequence.group.cooldown-millis=60000",
+        "sequence.group.datasources[0].url=" + GroupSequenceDaoTest.URL_PREFIX + "0" + GroupSequenceDaoTest.URL_SUFFIX,
+        "sequence.group.datasources[1].url=" + GroupSequenceDaoTest.URL_PREFIX + "1" + GroupSequenceDaoTest.URL_SUFFIX,
+        "sequence.group.datasources[2].url=" + GroupSequenceDaoTest.URL_PREFIX + "2" + GroupSequenceDaoTest.URL_SUFFIX,
+        "sequence.group.datasources[0].username=sa",
+        "sequence.group.datasources[1].username=sa",
+        "sequence.group.datasources[2].username=sa",
+})
+@Slf4j
+class GroupSequenceDaoTest {
+    static final String URL_PREFIX = "jdbc:h2:mem:group_";
+    static final String URL_SUFFIX = ";MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+    private static final String sequenceName = "tddl_test_seq";
+    private static final int step = 100;
+    private static final String mismatchedSequenceName = "tddl_mismatched_seq";
+
+    @Autowired
+    private SequenceDao sequenceDao;
+
+    @BeforeAll
+    static void createTables() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = DriverManager.getConnection(URL_PREFIX + i + URL_SUFFIX, "sa", "");
+                 Statement statement = connection.createStatement()) {
+                statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                        "gmt_modified timestamp, step int)");
+                statement.execute("insert into sequence values ('" + sequenceName + "', 0, now(), " + step + ")");
+                // 第 3 个库的步长不同
+                statement.execute("insert into sequence values ('" + mismatchedSequenceName + "', 0, now(), " +
+                        (i == 2 ? 2 * step : step) + ")");
+            }
+        }
+    }
+
+    @Test
+    void interleavedRangeAndFailoverTest() throws Exception {
+        Assertions.assertInstanceOf(GroupSequenceDao.class, sequenceDao);
+        List<SequenceRange> ranges = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ranges.add(sequenceDao.nextRange(sequenceName));
+        }
+        // 让第 2 个库不可用
+        try (Connection connection = DriverManager.getConnection(URL_PREFIX + 1 + URL_SUFFIX, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table sequence");
+        }
+        for (int i = 0; i < 30; i++) {
+            SequenceRange range = sequenceDao.nextRange(sequenceName);
+            // 第 i 个库的区间满足 (min - 1) % (3 * step) == i * step
+            Assertions.assertNotEquals(step, (range.getMin() - 1) % (3 * step));
+            ranges.add(range);
+        }
+        for (int i = 0; i < ranges.size(); i++) {
+            SequenceRange range = ranges.get(i);
+            Assertions.assertEquals(step, range.getMax() - range.getMin() + 1);
+            for (int j = i + 1; j < ranges.size(); j++) {
+                SequenceRange other = ranges.get(j);
+                Assertions.assertTrue(range.getMax() < other.getMin() || other.getMax() < range.getMin(),
+                        "overlapping ranges: " + range.getMin() + ", " + other.getMin());
+            }
+        }
+        log.debug("ranges:{}", ranges.stream().map(SequenceRange::getMin).toList());
+    }
+
+    @Test
+    void stepMismatchTest() {
+        for (int i = 0; i < 3; i++) {
+            SequenceException e = Assertions.assertThrows(SequenceException.class,
+                    () -> sequenceDao.nextRange(mismatchedSequenceName));
+            Assertions.assertTrue(e.getMessage().contains("step differs"), e.getMessage());
+        }
+    }
+
+    @Test
+    void allDatasourcesFailTest() throws Exception {
+        GroupSequenceProperties properties = new GroupSequenceProperties();
+        properties.setCooldownMillis(60000);
+        for (int i = 0; i < 2; i++) {
+            GroupSequenceProperties.DataSourceConfig config = new GroupSequenceProperties.DataSourceConfig();
+            // 库中没有序列表
+            config.setUrl("jdbc:h2:mem:group_down_" + i + URL_SUFFIX);
+            config.setUsername("sa");
+            properties.getDatasources().add(config);
+        }
+        GroupSequenceDao groupSequenceDao = new GroupSequenceDao(properties, SequenceMetrics.NOOP);
+        ReflectionTestUtils.setField(groupSequenceDao, "DEFAULT_TABLE_NAME", "sequence");
+        ReflectionTestUtils.setField(groupSequenceDao, "DEFAULT_NAME_COLUMN_NAME", "name");
+        ReflectionTestUtils.setField(groupSequenceDao, "DEFAULT_STEP_COLUMN_STEP", "step");
+        ReflectionTestUtils.setField(groupSequenceDao, "DEFAULT_VALUE_COLUMN_NAME", "value");
+        ReflectionTestUtils.setField(groupSequenceDao, "DEFAULT_GMT_MODIFIED_COLUMN_NAME", "gmt_modified");
+        groupSequenceDao.init();
+        try {
+            // 每个库只尝试一次
+            SequenceException e = Assertions.assertThrows(SequenceException.class,
+                    () -> groupSequenceDao.nextRange(sequenceName));
+            Assertions.assertEquals("All sequence datasources failed", e.getMessage());
+            Assertions.assertNotNull(e.getCause());
+            // 冷却中的库不再尝试, 直接失败
+            e = Assertions.assertThrows(SequenceException.class, () -> groupSequenceDao.nextRange(sequenceName));
+            Assertions.assertEquals("All sequence datasources failed", e.getMessage());
+            Assertions.assertNull(e.getCause());
+        } finally {
+            groupSequenceDao.destroy();
+        }
+    }
+}
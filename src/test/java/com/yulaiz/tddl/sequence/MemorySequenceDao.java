@@ -0,0 +1,74 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 内存中的序列存储, 用于脱离数据库的测试, 可模拟数据库延迟
+ */
+public class MemorySequenceDao implements SequenceDao {
+    private final Map<String, AtomicLong> values = new ConcurrentHashMap<>();
+    private final AtomicLong refillCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final int step;
+    private final long latencyNanos;
+    private volatile boolean available = true;
+
+    public MemorySequenceDao(int step) {
+        this(step, 0L);
+    }
+
+    public MemorySequenceDao(int step, long latencyMicros) {
+        this.step = step;
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName) throws SequenceException {
+        return nextRange(sequenceName, 0);
+    }
+
+    @Override
+    public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        if (!available) {
+            throw new SequenceUnavailableException(new SQLException("Sequence dao is unavailable"));
+        }
+        refillCount.incrementAndGet();
+        int size = requestedSize > 0 ? requestedSize : step;
+        long newValue = values.computeIfAbsent(sequenceName, k -> new AtomicLong()).addAndGet(size);
+        return new SequenceRange(newValue - size + 1, newValue);
+    }
+
+    @Override
+    public Map<String, SequenceRange> nextRanges(Map<String, Integer> requestedSizes) throws SequenceException {
+        batchCount.incrementAndGet();
+        return SequenceDao.super.nextRanges(requestedSizes);
+    }
+
+    /**
+     * 模拟数据库不可用
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getRefillCount() {
+        return refillCount.get();
+    }
+}
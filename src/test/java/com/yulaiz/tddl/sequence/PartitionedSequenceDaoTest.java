@@ -0,0 +1,119 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.PartitionedSequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + PartitionedSequenceDaoTest.URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "sequence.partition.enabled=true",
+        "sequence.partition.names=" + PartitionedSequenceDaoTest.sequenceName + ","
+                + PartitionedSequenceDaoTest.mismatchedSequenceName + ","
+                + PartitionedSequenceDaoTest.missingSequenceName,
+        "sequence.partition.count=4",
+        "sequence.partition.node-id=5",
+})
+class PartitionedSequenceDaoTest {
+    static final String URL = "jdbc:h2:mem:partition;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+    static final String sequenceName = "tddl_partition_seq";
+    static final String mismatchedSequenceName = "tddl_mismatched_seq";
+    static final String missingSequenceName = "tddl_missing_partition_seq";
+    private static final String plainSequenceName = "tddl_plain_seq";
+    private static final int step = 100;
+
+    @Autowired
+    private SequenceDao sequenceDao;
+
+    @BeforeAll
+    static void createTable() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            // 各分区初始值相同, 首次取区间时对齐到各自分区
+            for (int i = 0; i < 4; i++) {
+                statement.execute("insert into sequence values ('" + sequenceName + "#" + i + "', 0, now(), " + step + ")");
+            }
+            // 最后一个分区的步长不同
+            for (int i = 0; i < 4; i++) {
+                statement.execute("insert into sequence values ('" + mismatchedSequenceName + "#" + i + "', 0, now(), " +
+                        (i == 3 ? 2 * step : step) + ")");
+            }
+            statement.execute("insert into sequence values ('" + plainSequenceName + "', 0, now(), " + step + ")");
+        }
+    }
+
+    @Test
+    void homePartitionTest() throws Exception {
+        Assertions.assertInstanceOf(PartitionedSequenceDao.class, sequenceDao);
+        for (int i = 0; i < 10; i++) {
+            SequenceRange range = sequenceDao.nextRange(sequenceName);
+            // 单线程时没有冲突, 始终取主分区 5 % 4 = 1
+            Assertions.assertEquals(step, (range.getMin() - 1) % (4 * step));
+            Assertions.assertEquals(step, range.getMax() - range.getMin() + 1);
+        }
+        SequenceRange plainRange = sequenceDao.nextRange(plainSequenceName, 10);
+        Assertions.assertEquals(10, plainRange.getMax() - plainRange.getMin() + 1);
+        Assertions.assertTrue(sequenceDao.listSequenceNames().contains(sequenceName));
+        Assertions.assertFalse(sequenceDao.listSequenceNames().contains(sequenceName + "#0"));
+    }
+
+    @Test
+    void concurrentDisjointTest() throws Exception {
+        int nThreads = 8;
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        List<Future<SequenceRange>> futures = new ArrayList<>();
+        for (int i = 0; i < nThreads * 20; i++) {
+            futures.add(es.submit(() -> sequenceDao.nextRange(sequenceName)));
+        }
+        List<SequenceRange> ranges = new ArrayList<>();
+        for (Future<SequenceRange> future : futures) {
+            ranges.add(future.get(1, TimeUnit.MINUTES));
+        }
+        es.shutdown();
+        for (int i = 0; i < ranges.size(); i++) {
+            SequenceRange range = ranges.get(i);
+            Assertions.assertEquals(0, (range.getMin() - 1) % step);
+            for (int j = i + 1; j < ranges.size(); j++) {
+                SequenceRange other = ranges.get(j);
+                Assertions.assertTrue(range.getMax() < other.getMin() || other.getMax() < range.getMin(),
+                        "overlapping ranges: " + range.getMin() + ", " + other.getMin());
+            }
+        }
+    }
+
+    @Test
+    void stepMismatchTest() {
+        // 主分区 1 的步长正确, 仍需拒绝
+        SequenceException e = Assertions.assertThrows(SequenceException.class,
+                () -> sequenceDao.nextRange(mismatchedSequenceName));
+        Assertions.assertTrue(e.getMessage().contains("step differs"), e.getMessage());
+    }
+
+    @Test
+    void missingSequenceTest() {
+        // 没有任何分区行时与普通序列一致, 按序列不存在处理
+        Assertions.assertThrows(SequenceNotFoundException.class, () -> sequenceDao.nextRange(missingSequenceName));
+    }
+}
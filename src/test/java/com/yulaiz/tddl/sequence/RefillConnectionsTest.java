@@ -0,0 +1,171 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.RefillConnections;
+import com.yulaiz.tddl.sequence.service.impl.SequenceMetrics;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class RefillConnectionsTest {
+    private static final String sequenceName = "tddl_refill_seq";
+    private static final int step = 100;
+
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:refill;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists sequence");
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            statement.execute("insert into sequence values ('" + sequenceName + "', 0, now(), " + step + ")");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    private DefaultSequenceDao createDao(int refillConnections) {
+        DefaultSequenceDao sequenceDao = new DefaultSequenceDao(dataSource, SequenceMetrics.NOOP);
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_TABLE_NAME", "sequence");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_NAME_COLUMN_NAME", "name");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_STEP_COLUMN_STEP", "step");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_VALUE_COLUMN_NAME", "value");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_GMT_MODIFIED_COLUMN_NAME", "gmt_modified");
+        ReflectionTestUtils.setField(sequenceDao, "allocationMode", "cas");
+        ReflectionTestUtils.setField(sequenceDao, "refillConnectionCount", refillConnections);
+        ReflectionTestUtils.setField(sequenceDao, "refillConnectionTimeoutMillis", 3000L);
+        ReflectionTestUtils.setField(sequenceDao, "refillConnectionMaxLifetimeMillis", 0L);
+        sequenceDao.init();
+        return sequenceDao;
+    }
+
+    @Test
+    void reusePreparedStatementsTest() throws Exception {
+        DefaultSequenceDao sequenceDao = createDao(1);
+        try {
+            for (int i = 0; i < 100; i++) {
+                SequenceRange range = sequenceDao.nextRange(sequenceName);
+                Assertions.assertEquals((long) i * step + 1, range.getMin());
+                Assertions.assertEquals((long) (i + 1) * step, range.getMax());
+            }
+            RefillConnections refillConnections =
+                    (RefillConnections) ReflectionTestUtils.getField(sequenceDao, "refillConnections");
+            // select 和 update 各 prepare 一次
+            Assertions.assertEquals(2, refillConnections.getPreparedCount());
+        } finally {
+            sequenceDao.destroy();
+        }
+    }
+
+    @Test
+    void concurrentRefillTest() throws Exception {
+        DefaultSequenceDao sequenceDao = createDao(2);
+        int nThreads = 8;
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<SequenceRange>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads * 20; i++) {
+                futures.add(es.submit(() -> sequenceDao.nextRange(sequenceName)));
+            }
+            List<SequenceRange> ranges = new ArrayList<>();
+            for (Future<SequenceRange> future : futures) {
+                ranges.add(future.get(1, TimeUnit.MINUTES));
+            }
+            ranges.sort((a, b) -> Long.compare(a.getMin(), b.getMin()));
+            for (int i = 0; i < ranges.size(); i++) {
+                Assertions.assertEquals((long) i * step + 1, ranges.get(i).getMin());
+            }
+        } finally {
+            es.shutdown();
+            sequenceDao.destroy();
+        }
+    }
+
+    @Test
+    void discardBrokenConnectionTest() throws Exception {
+        try (RefillConnections refillConnections = new RefillConnections(dataSource, 1, 1000, 0)) {
+            Assertions.assertThrows(SQLException.class, () -> refillConnections.execute(c -> {
+                c.prepare("select 1").executeQuery().close();
+                throw new SQLException("broken");
+            }));
+            // 出错的连接连同语句一起丢弃, 下次重新 prepare
+            Integer result = refillConnections.execute(c -> {
+                c.prepare("select 1").executeQuery().close();
+                return 1;
+            });
+            Assertions.assertEquals(1, result);
+            Assertions.assertEquals(2, refillConnections.getPreparedCount());
+        }
+    }
+
+    @Test
+    void waitTimeoutTest() throws Exception {
+        try (RefillConnections refillConnections = new RefillConnections(dataSource, 1, 50, 0)) {
+            CountDownLatch borrowed = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Object> holder = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return refillConnections.execute(c -> {
+                        borrowed.countDown();
+                        try {
+                            return release.await(1, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new SequenceException(e);
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Assertions.assertTrue(borrowed.await(1, TimeUnit.SECONDS));
+            SequenceException e = Assertions.assertThrows(SequenceException.class,
+                    () -> refillConnections.execute(c -> null));
+            Assertions.assertTrue(e.getMessage().contains("Timed out"));
+            release.countDown();
+            holder.get(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void dataSourcePropertiesTest() {
+        DriverManagerDataSource refillDataSource;
+        // 连接池启动后不能再修改配置, 使用未启动的连接池
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setJdbcUrl(dataSource.getJdbcUrl());
+            pool.setUsername("sa");
+            pool.addDataSourceProperty("connectTimeout", "3000");
+            DefaultSequenceDao sequenceDao = new DefaultSequenceDao(pool, SequenceMetrics.NOOP);
+            refillDataSource = ReflectionTestUtils.invokeMethod(sequenceDao, "refillDataSource");
+        }
+        Assertions.assertNotNull(refillDataSource);
+        Assertions.assertNotNull(refillDataSource.getConnectionProperties());
+        // 专用连接沿用连接池的连接属性
+        Assertions.assertEquals("3000", refillDataSource.getConnectionProperties().getProperty("connectTimeout"));
+    }
+}
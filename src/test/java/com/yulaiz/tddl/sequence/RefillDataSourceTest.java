@@ -0,0 +1,65 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.RefillConnections;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + RefillDataSourceTest.URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "sequence.refill.connections=2",
+})
+class RefillDataSourceTest {
+    static final String URL = "jdbc:h2:mem:refill_pool;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+    private static final String sequenceName = "tddl_refill_pool_seq";
+
+    @Autowired
+    private SequenceDao sequenceDao;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeAll
+    static void createTable() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            statement.execute("insert into sequence values ('" + sequenceName + "', 0, now(), 100)");
+        }
+    }
+
+    @Test
+    void refillConnectionsBypassPoolTest() throws Exception {
+        Assertions.assertInstanceOf(DefaultSequenceDao.class, sequenceDao);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(i * 100L + 1, sequenceDao.nextRange(sequenceName).getMin());
+        }
+        // 注入 DAO 的是 @Lazy 代理, 仍要用连接池的配置直接建立专用连接
+        RefillConnections refillConnections =
+                (RefillConnections) ReflectionTestUtils.getField(sequenceDao, "refillConnections");
+        Assertions.assertNotNull(refillConnections);
+        Assertions.assertInstanceOf(DriverManagerDataSource.class,
+                ReflectionTestUtils.getField(refillConnections, "dataSource"));
+        // 专用连接一直持有, 不占用连接池
+        HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        Assertions.assertTrue(pool == null || pool.getActiveConnections() == 0);
+    }
+}
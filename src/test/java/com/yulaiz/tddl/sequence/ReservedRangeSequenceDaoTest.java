@@ -0,0 +1,131 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.exception.SequenceNotFoundException;
+import com.yulaiz.tddl.sequence.exception.SequenceUnavailableException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.RangeJournal;
+import com.yulaiz.tddl.sequence.service.impl.ReservedRangeSequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ReservedRangeSequenceDaoTest {
+    private static final String sequenceName = "reserve_seq";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void issueFromReserveDuringOutageTest() throws Exception {
+        MemorySequenceDao dao = new MemorySequenceDao(100);
+        Path path = tempDir.resolve("reserve.journal");
+        Set<Long> values = new HashSet<>();
+        try (RangeJournal journal = new RangeJournal(path, 16)) {
+            DefaultSequence sequence = new DefaultSequence(
+                    new ReservedRangeSequenceDao(dao, journal, Runnable::run, 2), sequenceName);
+            for (int i = 0; i < 150; i++) {
+                Assertions.assertTrue(values.add(sequence.nextValue()));
+            }
+            Assertions.assertEquals(2, journal.count(sequenceName));
+            dao.setAvailable(false);
+            // 数据库不可用时继续使用两段预留区间
+            for (int i = 0; i < 250; i++) {
+                Assertions.assertTrue(values.add(sequence.nextValue()));
+            }
+            Assertions.assertEquals(0, journal.count(sequenceName));
+            Assertions.assertThrows(SequenceException.class, sequence::nextValue);
+            dao.setAvailable(true);
+            Assertions.assertTrue(values.add(sequence.nextValue()));
+            Assertions.assertEquals(2, journal.count(sequenceName));
+        }
+        // 重启后数据库仍不可用, 使用日志中的预留区间
+        dao.setAvailable(false);
+        try (RangeJournal journal = new RangeJournal(path, 16)) {
+            Assertions.assertEquals(2, journal.count(sequenceName));
+            DefaultSequence sequence = new DefaultSequence(
+                    new ReservedRangeSequenceDao(dao, journal, Runnable::run, 2), sequenceName);
+            for (int i = 0; i < 200; i++) {
+                Assertions.assertTrue(values.add(sequence.nextValue()));
+            }
+        }
+        // 已取出的区间不会在重启后再次出现
+        try (RangeJournal journal = new RangeJournal(path, 16)) {
+            Assertions.assertEquals(0, journal.count(sequenceName));
+        }
+    }
+
+    @Test
+    void dataErrorNotFallbackTest() throws Exception {
+        AtomicReference<SequenceException> error = new AtomicReference<>();
+        MemorySequenceDao dao = new MemorySequenceDao(100) {
+            @Override
+            public SequenceRange nextRange(String sequenceName, int requestedSize) throws SequenceException {
+                SequenceException e = error.get();
+                if (e != null) {
+                    throw e;
+                }
+                return super.nextRange(sequenceName, requestedSize);
+            }
+        };
+        try (RangeJournal journal = new RangeJournal(tempDir.resolve("data-error.journal"), 16)) {
+            ReservedRangeSequenceDao reservedDao = new ReservedRangeSequenceDao(dao, journal, Runnable::run, 2);
+            reservedDao.nextRange(sequenceName);
+            Assertions.assertEquals(2, journal.count(sequenceName));
+            // 序列被删除或值溢出时不能继续从预留区间发号
+            error.set(new SequenceNotFoundException("Sequence does not exist"));
+            Assertions.assertThrows(SequenceNotFoundException.class, () -> reservedDao.nextRange(sequenceName));
+            error.set(new SequenceException("Sequence value overflow"));
+            Assertions.assertThrows(SequenceException.class, () -> reservedDao.nextRange(sequenceName));
+            Assertions.assertThrows(SequenceException.class,
+                    () -> reservedDao.nextRanges(Map.of(sequenceName, 0)));
+            Assertions.assertEquals(2, journal.count(sequenceName));
+            // 数据库故障时使用预留区间
+            error.set(new SequenceUnavailableException("Timed out waiting for refill connection"));
+            Assertions.assertNotNull(reservedDao.nextRange(sequenceName));
+            Assertions.assertEquals(1, journal.count(sequenceName));
+        }
+    }
+
+    @Test
+    void corruptedSlotTest() throws Exception {
+        Path path = tempDir.resolve("corrupted.journal");
+        try (RangeJournal journal = new RangeJournal(path, 4)) {
+            journal.append(sequenceName, new SequenceRange(1, 100));
+            journal.append(sequenceName, new SequenceRange(101, 200));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            // 破坏第一个槽的区间上限
+            file.seek(16 + 12);
+            file.writeLong(999);
+        }
+        try (RangeJournal journal = new RangeJournal(path, 4)) {
+            Assertions.assertEquals(1, journal.count(sequenceName));
+            SequenceRange range = journal.take(sequenceName);
+            Assertions.assertEquals(101, range.getMin());
+            Assertions.assertEquals(200, range.getMax());
+        }
+    }
+
+    @Test
+    void lockedJournalTest() throws Exception {
+        Path path = tempDir.resolve("locked.journal");
+        try (RangeJournal journal = new RangeJournal(path, 4)) {
+            journal.append(sequenceName, new SequenceRange(1, 100));
+            // 另一个实例打开同一个日志会取出同一段区间
+            Assertions.assertThrows(IOException.class, () -> new RangeJournal(path, 4));
+        }
+        try (RangeJournal journal = new RangeJournal(path, 4)) {
+            Assertions.assertEquals(1, journal.count(sequenceName));
+        }
+    }
+}
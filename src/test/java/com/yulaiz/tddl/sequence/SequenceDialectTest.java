@@ -0,0 +1,191 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.H2SequenceDialect;
+import com.yulaiz.tddl.sequence.service.impl.MySqlSequenceDialect;
+import com.yulaiz.tddl.sequence.service.impl.PostgreSqlSequenceDialect;
+import com.yulaiz.tddl.sequence.service.impl.SequenceDialect;
+import com.yulaiz.tddl.sequence.service.impl.SequenceMetrics;
+import com.yulaiz.tddl.sequence.service.impl.SequenceTable;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 没有内嵌的 PostgreSQL, 用 PostgreSQL 兼容模式的 H2 代替: H2 不支持 update ... returning,
+ * 返回新值的路径由 H2 方言的 final table 覆盖, PostgreSQL 方言只校验生成的语句
+ */
+class SequenceDialectTest {
+    private static final String sequenceName = "tddl_dialect_seq";
+    private static final int step = 100;
+    private static final SequenceTable table = new SequenceTable("sequence", "name", "value", "step", "gmt_modified");
+
+    private HikariDataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private void createTable(String mode) throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:dialect_" + mode + ";MODE=" + mode +
+                ";DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists sequence");
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            statement.execute("insert into sequence values ('" + sequenceName + "', 0, now(), " + step + ")");
+        }
+    }
+
+    private DefaultSequenceDao createDao(String dialect) {
+        DefaultSequenceDao sequenceDao = new DefaultSequenceDao(dataSource, SequenceMetrics.NOOP);
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_TABLE_NAME", "sequence");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_NAME_COLUMN_NAME", "name");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_STEP_COLUMN_STEP", "step");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_VALUE_COLUMN_NAME", "value");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_GMT_MODIFIED_COLUMN_NAME", "gmt_modified");
+        ReflectionTestUtils.setField(sequenceDao, "allocationMode", "atomic");
+        ReflectionTestUtils.setField(sequenceDao, "dialectName", dialect);
+        sequenceDao.init();
+        return sequenceDao;
+    }
+
+    @Test
+    void postgreSqlReturningSqlTest() throws Exception {
+        List<String> sqls = new ArrayList<>();
+        SequenceDialect dialect = new PostgreSqlSequenceDialect(table);
+        Assertions.assertTrue(dialect.returnsStep());
+        // 只记录语句, 不连接数据库
+        Assertions.assertThrows(SQLException.class, () -> dialect.reserve(sql -> {
+            sqls.add(sql);
+            throw new SQLException("not connected");
+        }, sequenceName, 0));
+        Assertions.assertEquals("update sequence set value = value + step, gmt_modified = ? " +
+                "where name = ? and value >= 0 and value <= ? and step > 0 returning value, step", sqls.get(0));
+    }
+
+    @Test
+    void forDatabaseTest() {
+        Assertions.assertInstanceOf(PostgreSqlSequenceDialect.class,
+                SequenceDialect.forDatabase("PostgreSQL", table));
+        Assertions.assertInstanceOf(MySqlSequenceDialect.class, SequenceDialect.forDatabase("MySQL", table));
+        Assertions.assertInstanceOf(MySqlSequenceDialect.class, SequenceDialect.forDatabase("MariaDB", table));
+        Assertions.assertInstanceOf(H2SequenceDialect.class, SequenceDialect.forDatabase("H2", table));
+        Assertions.assertNull(SequenceDialect.forDatabase("Oracle", table));
+        Assertions.assertInstanceOf(PostgreSqlSequenceDialect.class, SequenceDialect.forName("PostgreSQL", table));
+    }
+
+    @Test
+    void returningRangeTest() throws Exception {
+        createTable("PostgreSQL");
+        DefaultSequenceDao sequenceDao = createDao("auto");
+        Assertions.assertInstanceOf(H2SequenceDialect.class, ReflectionTestUtils.invokeMethod(sequenceDao, "getDialect"));
+        for (int i = 0; i < 10; i++) {
+            SequenceRange range = sequenceDao.nextRange(sequenceName);
+            Assertions.assertEquals((long) i * step + 1, range.getMin());
+            Assertions.assertEquals((long) (i + 1) * step, range.getMax());
+        }
+        SequenceRange range = sequenceDao.nextRange(sequenceName, 7);
+        Assertions.assertEquals(10L * step + 1, range.getMin());
+        Assertions.assertEquals(10L * step + 7, range.getMax());
+        Assertions.assertThrows(SequenceException.class, () -> sequenceDao.nextRange("tddl_missing_seq"));
+    }
+
+    @Test
+    void returningStepChangeTest() throws Exception {
+        createTable("PostgreSQL");
+        DefaultSequenceDao sequenceDao = createDao("h2");
+        Assertions.assertEquals(step, sequenceDao.nextRange(sequenceName).getMax());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("update sequence set step = 10 where name = ?")) {
+            stmt.setString(1, sequenceName);
+            stmt.executeUpdate();
+        }
+        // 步长随语句返回, 修改后立即生效
+        SequenceRange range = sequenceDao.nextRange(sequenceName);
+        Assertions.assertEquals(step + 1, range.getMin());
+        Assertions.assertEquals(step + 10, range.getMax());
+    }
+
+    @Test
+    void concurrentReturningTest() throws Exception {
+        createTable("PostgreSQL");
+        DefaultSequenceDao sequenceDao = createDao("h2");
+        int nThreads = 8;
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<SequenceRange>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads * 20; i++) {
+                futures.add(es.submit(() -> sequenceDao.nextRange(sequenceName)));
+            }
+            List<SequenceRange> ranges = new ArrayList<>();
+            for (Future<SequenceRange> future : futures) {
+                ranges.add(future.get(1, TimeUnit.MINUTES));
+            }
+            ranges.sort((a, b) -> Long.compare(a.getMin(), b.getMin()));
+            for (int i = 0; i < ranges.size(); i++) {
+                Assertions.assertEquals((long) i * step + 1, ranges.get(i).getMin());
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    @Test
+    void mySqlLastInsertIdTest() throws Exception {
+        createTable("MySQL");
+        DefaultSequenceDao sequenceDao = createDao("mysql");
+        for (int i = 0; i < 3; i++) {
+            SequenceRange range = sequenceDao.nextRange(sequenceName);
+            Assertions.assertEquals((long) i * step + 1, range.getMin());
+            Assertions.assertEquals((long) (i + 1) * step, range.getMax());
+        }
+    }
+
+    @Test
+    void mySqlStepCacheTest() throws Exception {
+        createTable("MySQL");
+        DefaultSequenceDao sequenceDao = createDao("mysql");
+        ReflectionTestUtils.setField(sequenceDao, "stepCacheMillis", 60000L);
+        Assertions.assertEquals(step, sequenceDao.nextRange(sequenceName).getMax());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("update sequence set step = 10 where name = ?")) {
+            stmt.setString(1, sequenceName);
+            stmt.executeUpdate();
+        }
+        // 有效期内使用缓存的步长
+        Assertions.assertEquals(2L * step, sequenceDao.nextRange(sequenceName).getMax());
+        // 序列淘汰后重新读取
+        sequenceDao.release(sequenceName);
+        Assertions.assertEquals(2L * step + 10, sequenceDao.nextRange(sequenceName).getMax());
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("update sequence set step = 20 where name = ?")) {
+            stmt.setString(1, sequenceName);
+            stmt.executeUpdate();
+        }
+        // 超过有效期后重新读取
+        ReflectionTestUtils.setField(sequenceDao, "stepCacheMillis", 0L);
+        Assertions.assertEquals(2L * step + 30, sequenceDao.nextRange(sequenceName).getMax());
+    }
+}
@@ -0,0 +1,91 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.SequenceMetrics;
+import com.yulaiz.tddl.sequence.service.impl.SequenceOptions;
+import com.yulaiz.tddl.sequence.service.impl.SequenceRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+class SequenceMetricsTest {
+    private final MemorySequenceDao dao = new MemorySequenceDao(100);
+
+    @Test
+    void issuedRefillAndRemainingTest() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SequenceOptions options = new SequenceOptions();
+        options.setMetrics(new SequenceMetrics(meterRegistry, 10));
+        DefaultSequence sequence = new DefaultSequence(dao, "metrics_seq", options);
+        for (int i = 0; i < 150; i++) {
+            sequence.nextValue();
+        }
+        sequence.nextValueList(20);
+        Assertions.assertEquals(170, meterRegistry.get("sequence.issued")
+                .tag("sequence", "metrics_seq").functionCounter().count());
+        Assertions.assertEquals(2, meterRegistry.get("sequence.refill")
+                .tag("sequence", "metrics_seq").timer().count());
+        Assertions.assertEquals(30, meterRegistry.get("sequence.range.remaining")
+                .tag("sequence", "metrics_seq").gauge().value());
+    }
+
+    @Test
+    void boundedCardinalityTest() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SequenceOptions options = new SequenceOptions();
+        options.setMetrics(new SequenceMetrics(meterRegistry, 10));
+        for (int i = 0; i < 1000; i++) {
+            new DefaultSequence(dao, "metrics_seq_" + i, options).nextValue();
+        }
+        // 10 个独立标签 + _other
+        Assertions.assertEquals(11, meterRegistry.get("sequence.issued").functionCounters().size());
+        Assertions.assertEquals(10, meterRegistry.get("sequence.range.remaining").gauges().size());
+        Assertions.assertEquals(990, meterRegistry.get("sequence.issued")
+                .tag("sequence", "_other").functionCounter().count());
+    }
+
+    @Test
+    void releaseOnEvictionTest() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SequenceMetrics metrics = new SequenceMetrics(meterRegistry, 1);
+        SequenceOptions options = new SequenceOptions();
+        options.setMetrics(metrics);
+        SequenceRegistry registry = new SequenceRegistry(1, TimeUnit.HOURS.toMillis(1), metrics::release);
+        // 新建 metrics_seq_1 时标签已被占用, 计入 _other, 随后淘汰 metrics_seq_0 释放标签
+        for (int i = 0; i < 3; i++) {
+            registry.get("metrics_seq_" + i, name -> new DefaultSequence(dao, name, options)).nextValue();
+        }
+        Assertions.assertNull(meterRegistry.find("sequence.issued").tag("sequence", "metrics_seq_0").meter());
+        Assertions.assertNull(meterRegistry.find("sequence.range.remaining").tag("sequence", "metrics_seq_0").meter());
+        Assertions.assertEquals(1, meterRegistry.get("sequence.issued")
+                .tag("sequence", "_other").functionCounter().count());
+        Assertions.assertEquals(1, meterRegistry.get("sequence.issued")
+                .tag("sequence", "metrics_seq_2").functionCounter().count());
+        Assertions.assertEquals(99, meterRegistry.get("sequence.range.remaining")
+                .tag("sequence", "metrics_seq_2").gauge().value());
+    }
+
+    @Test
+    void weakSequenceReferenceTest() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SequenceOptions options = new SequenceOptions();
+        options.setMetrics(new SequenceMetrics(meterRegistry, 10));
+        DefaultSequence sequence = new DefaultSequence(dao, "metrics_seq", options);
+        sequence.nextValue();
+        Assertions.assertEquals(99, meterRegistry.get("sequence.range.remaining")
+                .tag("sequence", "metrics_seq").gauge().value());
+        // 指标不持有序列的强引用, 序列不再使用后可以回收
+        WeakReference<DefaultSequence> reference = new WeakReference<>(sequence);
+        sequence = null;
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        Assertions.assertNull(reference.get());
+        Assertions.assertEquals(0, meterRegistry.get("sequence.range.remaining")
+                .tag("sequence", "metrics_seq").gauge().value());
+    }
+}
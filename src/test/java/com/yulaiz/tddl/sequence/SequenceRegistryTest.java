@@ -0,0 +1,37 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.SequenceRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class SequenceRegistryTest {
+    private final MemorySequenceDao dao = new MemorySequenceDao(100);
+
+    @Test
+    void sizeEvictionTest() {
+        SequenceRegistry registry = new SequenceRegistry(10, TimeUnit.HOURS.toMillis(1));
+        DefaultSequence sequence = registry.get("seq_0", name -> new DefaultSequence(dao, name));
+        Assertions.assertSame(sequence, registry.get("seq_0", name -> new DefaultSequence(dao, name)));
+        for (int i = 1; i < 100; i++) {
+            registry.get("seq_" + i, name -> new DefaultSequence(dao, name));
+        }
+        // 每次淘汰到 9 个, 新建两个序列才触发一次淘汰
+        Assertions.assertEquals(100 - registry.size(), registry.getSizeEvictionCount());
+        Assertions.assertEquals(10, registry.size());
+        Assertions.assertEquals(0, registry.getIdleEvictionCount());
+    }
+
+    @Test
+    void idleEvictionTest() throws Exception {
+        SequenceRegistry registry = new SequenceRegistry(100, 10);
+        DefaultSequence sequence = registry.get("seq_0", name -> new DefaultSequence(dao, name));
+        TimeUnit.MILLISECONDS.sleep(50);
+        registry.get("seq_1", name -> new DefaultSequence(dao, name));
+        Assertions.assertEquals(1, registry.getIdleEvictionCount());
+        Assertions.assertEquals(1, registry.size());
+        Assertions.assertNotSame(sequence, registry.get("seq_0", name -> new DefaultSequence(dao, name)));
+    }
+}
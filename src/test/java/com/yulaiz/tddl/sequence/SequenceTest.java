@@ -3,6 +3,9 @@ package com.yulaiz.tddl.sequence;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yulaiz.tddl.sequence.exception.SequenceException;
 import com.yulaiz.tddl.sequence.service.Sequence;
+import com.yulaiz.tddl.sequence.service.SequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -17,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -36,6 +40,8 @@ class SequenceTest {
     private ApplicationContext applicationContext;
     @Autowired
     private DataSource dataSource;
+    @Autowired
+    private SequenceDao sequenceDao;
 
     private static final String sequenceName1 = "tddl_test_seq";
     private static final String sequenceName2 = "tddl_test_seq1";
@@ -277,6 +283,49 @@ class SequenceTest {
         Assertions.assertEquals(value + 1 + listStep, nextValue);
     }
 
+    @Test
+    void getNextSegmentsTest() throws Exception {
+        long value = this.sequence.nextValue(sequenceName1);
+        int listStep = 25;
+        List<SequenceSegment> segments = this.sequence.nextSegments(sequenceName1, listStep);
+        long nextValue = this.sequence.nextValue(sequenceName1);
+        log.debug("value:{}, segments:{}, nextValue:{}", value, segments, nextValue);
+        long count = 0;
+        for (SequenceSegment segment : segments) {
+            count += segment.getEnd() - segment.getStart() + 1;
+        }
+        Assertions.assertEquals(listStep, count);
+        Assertions.assertEquals(value + 1, segments.get(0).getStart());
+        Assertions.assertEquals(value + 1 + listStep, nextValue);
+    }
+
+    @Test
+    void getNextValuesTest() throws Exception {
+        long value = this.sequence.nextValue(sequenceName1);
+        long[] values = new long[30];
+        this.sequence.nextValues(sequenceName1, values, 5, 25);
+        long nextValue = this.sequence.nextValue(sequenceName1);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(0L, values[i]);
+        }
+        for (int i = 5; i < values.length; i++) {
+            Assertions.assertEquals(value + i - 4, values[i]);
+        }
+        Assertions.assertEquals(value + 26, nextValue);
+    }
+
+    @Test
+    void getNextRangesTest() throws Exception {
+        SequenceRange range1 = this.sequenceDao.nextRange(sequenceName1);
+        Map<String, SequenceRange> ranges =
+                this.sequenceDao.nextRanges(List.of(sequenceName1, sequenceName2, "tddl_not_exist_seq"));
+        log.debug("range1:{}-{}, ranges:{}", range1.getMin(), range1.getMax(), ranges.keySet());
+        Assertions.assertEquals(2, ranges.size());
+        Assertions.assertEquals(range1.getMax() + 1, ranges.get(sequenceName1).getMin());
+        SequenceRange range2 = this.sequenceDao.nextRange(sequenceName2);
+        Assertions.assertEquals(ranges.get(sequenceName2).getMax() + 1, range2.getMin());
+    }
+
     @Test
     void multiThreadValueListTest() throws Exception {
         Set<Long> values1 = new ConcurrentSkipListSet<>();
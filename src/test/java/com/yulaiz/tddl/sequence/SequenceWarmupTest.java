@@ -0,0 +1,76 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.service.impl.SequenceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + SequenceWarmupTest.URL,
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.sql.init.mode=never",
+        "sequence.warmup.enabled=true",
+        "sequence.warmup.concurrency=2",
+        "sequence.warmup.batch-size=2",
+})
+@Slf4j
+class SequenceWarmupTest {
+    static final String URL = "jdbc:h2:mem:warmup;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+    private static final int sequenceCount = 5;
+    private static final int step = 100;
+
+    @Autowired
+    private SequenceImpl sequence;
+
+    @Autowired
+    private ApplicationAvailability availability;
+
+    @BeforeAll
+    static void createTable() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            for (int i = 0; i < sequenceCount; i++) {
+                statement.execute("insert into sequence values ('warmup_seq_" + i + "', 0, now(), " + step + ")");
+            }
+        }
+    }
+
+    @Test
+    void preloadBeforeReadyTest() throws Exception {
+        Assertions.assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+        Assertions.assertEquals(sequenceCount, sequence.getRegistry().size());
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from sequence where value = " + step)) {
+            rs.next();
+            Assertions.assertEquals(sequenceCount, rs.getInt(1));
+        }
+        // 预热的区间直接使用, 不再访问数据库
+        for (int i = 0; i < sequenceCount; i++) {
+            Assertions.assertEquals(1, sequence.nextValue("warmup_seq_" + i));
+        }
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select max(value) from sequence")) {
+            rs.next();
+            Assertions.assertEquals(step, rs.getLong(1));
+        }
+        // 已加载的序列不会重复预热
+        Assertions.assertEquals(0, sequence.preload(List.of("warmup_seq_0")));
+    }
+}
@@ -0,0 +1,84 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.service.impl.SnowflakeSequence;
+import com.yulaiz.tddl.sequence.vo.SequenceSegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+class SnowflakeSequenceTest {
+    private static final String sequenceName = "tddl_test_seq";
+    private static final long epoch = 1704067200000L;
+
+    @Test
+    void multiThreadUniqueTest() throws Exception {
+        SnowflakeSequence sequence = new SnowflakeSequence(() -> 1, epoch);
+        int nThreads = 16;
+        int times = 20000;
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        Future<?>[] futures = new Future[nThreads];
+        long[][] values = new long[nThreads][times];
+        for (int i = 0; i < nThreads; i++) {
+            int index = i;
+            futures[i] = es.submit(() -> {
+                long last = -1;
+                for (int j = 0; j < times; j++) {
+                    long value = sequence.nextValue(sequenceName);
+                    // 同一线程内递增
+                    Assertions.assertTrue(value > last);
+                    values[index][j] = last = value;
+                }
+                return null;
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        es.shutdown();
+        Set<Long> set = new HashSet<>();
+        for (long[] threadValues : values) {
+            for (long value : threadValues) {
+                Assertions.assertTrue(set.add(value), "duplicate value: " + value);
+            }
+        }
+    }
+
+    @Test
+    void clockBackwardsTest() throws Exception {
+        AtomicLong clock = new AtomicLong(epoch + 10_000);
+        SnowflakeSequence sequence = new SnowflakeSequence(() -> 1, epoch, clock::get);
+        long value = sequence.nextValue(sequenceName);
+        clock.addAndGet(-5_000);
+        long[] values = new long[10_000];
+        sequence.nextValues(sequenceName, values, 0, values.length);
+        long last = value;
+        for (long next : values) {
+            Assertions.assertTrue(next > last);
+            last = next;
+        }
+        // 单毫秒序号用完后借用下一毫秒
+        Assertions.assertTrue((last >>> 22) > (value >>> 22));
+    }
+
+    @Test
+    void nextSegmentsTest() throws Exception {
+        AtomicLong clock = new AtomicLong(epoch + 10_000);
+        SnowflakeSequence sequence = new SnowflakeSequence(() -> 1, epoch, clock::get);
+        List<SequenceSegment> segments = sequence.nextSegments(sequenceName, 5000);
+        Assertions.assertEquals(2, segments.size());
+        long count = 0;
+        for (SequenceSegment segment : segments) {
+            count += segment.getEnd() - segment.getStart() + 1;
+        }
+        Assertions.assertEquals(5000, count);
+        Assertions.assertTrue(segments.get(1).getStart() > segments.get(0).getEnd());
+    }
+}
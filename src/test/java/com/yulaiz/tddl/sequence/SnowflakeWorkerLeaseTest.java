@@ -0,0 +1,180 @@
+package com.yulaiz.tddl.sequence;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.SnowflakeWorkerLease;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+class SnowflakeWorkerLeaseTest {
+    private static final int MAX_WORKERS = 1024;
+
+    private HikariDataSource dataSource;
+
+    private final List<SnowflakeWorkerLease> leases = new ArrayList<>();
+
+    @BeforeEach
+    void setup() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:lease;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists sequence_worker");
+            statement.execute("create table sequence_worker (worker_id int primary key, owner varchar(255), " +
+                    "expire_at bigint, last_timestamp bigint default 0, gmt_modified timestamp)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        leases.forEach(SnowflakeWorkerLease::release);
+        dataSource.close();
+    }
+
+    private SnowflakeWorkerLease createLease(long leaseMillis, long maxClockSkewMillis) {
+        SnowflakeWorkerLease lease = new SnowflakeWorkerLease(dataSource);
+        ReflectionTestUtils.setField(lease, "tableName", "sequence_worker");
+        ReflectionTestUtils.setField(lease, "leaseMillis", leaseMillis);
+        ReflectionTestUtils.setField(lease, "maxClockSkewMillis", maxClockSkewMillis);
+        leases.add(lease);
+        return lease;
+    }
+
+    /**
+     * 除 freeWorkerId 外的 workerId 都被其他节点持有, freeWorkerId 的行不做修改
+     */
+    private void leaseAllBut(int freeWorkerId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "merge into sequence_worker key (worker_id) values (?, 'other', ?, 0, now())")) {
+            for (int i = 0; i < MAX_WORKERS; i++) {
+                if (i != freeWorkerId) {
+                    stmt.setInt(1, i);
+                    stmt.setLong(2, Long.MAX_VALUE);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    @Test
+    void distinctWorkerIdTest() throws Exception {
+        SnowflakeWorkerLease first = createLease(60000, 1000);
+        SnowflakeWorkerLease second = createLease(60000, 1000);
+        int firstId = first.acquire();
+        int secondId = second.acquire();
+        Assertions.assertNotEquals(firstId, secondId);
+        Assertions.assertEquals(firstId, first.getWorkerId());
+        Assertions.assertEquals(secondId, second.getWorkerId());
+    }
+
+    @Test
+    void takeOverExpiredTest() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("insert into sequence_worker values (7, 'crashed', 1, 0, now())");
+        }
+        leaseAllBut(7);
+        SnowflakeWorkerLease lease = createLease(60000, 1000);
+        Assertions.assertEquals(7, lease.acquire());
+    }
+
+    @Test
+    void noFreeWorkerIdTest() throws Exception {
+        leaseAllBut(-1);
+        SnowflakeWorkerLease lease = createLease(60000, 1000);
+        Assertions.assertThrows(SequenceException.class, lease::acquire);
+        Assertions.assertThrows(SequenceException.class, lease::getWorkerId);
+    }
+
+    @Test
+    void releaseTest() throws Exception {
+        SnowflakeWorkerLease first = createLease(60000, 1000);
+        int workerId = first.acquire();
+        first.release();
+        Assertions.assertThrows(SequenceException.class, first::getWorkerId);
+        // 释放的 id 可以立即被其他节点租用
+        leaseAllBut(workerId);
+        Assertions.assertEquals(workerId, createLease(60000, 1000).acquire());
+    }
+
+    @Test
+    void takenOverRenewTest() throws Exception {
+        SnowflakeWorkerLease lease = createLease(60000, 1000);
+        int workerId = lease.acquire();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("update sequence_worker set owner = 'other' where worker_id = " + workerId);
+        }
+        ReflectionTestUtils.invokeMethod(lease, "renew");
+        // 不再使用被接手的 id
+        Assertions.assertNotEquals(workerId, lease.getWorkerId());
+    }
+
+    @Test
+    void renewFailureExpiresTest() throws Exception {
+        SnowflakeWorkerLease lease = createLease(300, 100);
+        lease.acquire();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table sequence_worker");
+        }
+        Thread.sleep(250);
+        // 续约失败, 到期前 max-clock-skew-millis 停止发号
+        Assertions.assertThrows(SequenceException.class, lease::getWorkerId);
+    }
+
+    @Test
+    void releaseLastTimestampTest() throws Exception {
+        SnowflakeWorkerLease first = createLease(60000, 1000);
+        int workerId = first.acquire();
+        // 时钟回拨后沿用的时间戳大于释放时间
+        long last = System.currentTimeMillis() + 300;
+        first.trackLastTimestamp(() -> last);
+        first.release();
+        Assertions.assertEquals(last, lastTimestamp(workerId));
+        // 立即接手的节点等本地时钟超过最后发号的时间戳
+        leaseAllBut(workerId);
+        Assertions.assertEquals(workerId, createLease(60000, 1000).acquire());
+        Assertions.assertTrue(System.currentTimeMillis() > last);
+    }
+
+    @Test
+    void skipClockBehindTest() throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "insert into sequence_worker values (7, 'released', 0, ?, now())")) {
+            stmt.setLong(1, System.currentTimeMillis() + 60000);
+            stmt.executeUpdate();
+        }
+        leaseAllBut(7);
+        SnowflakeWorkerLease lease = createLease(60000, 1000);
+        // 本地时钟落后超过 max-clock-skew-millis, 不接手
+        Assertions.assertThrows(SequenceException.class, lease::acquire);
+    }
+
+    private long lastTimestamp(int workerId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "select last_timestamp from sequence_worker where worker_id = ?")) {
+            stmt.setInt(1, workerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                Assertions.assertTrue(rs.next());
+                return rs.getLong(1);
+            }
+        }
+    }
+}
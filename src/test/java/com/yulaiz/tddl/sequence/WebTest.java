@@ -8,13 +8,17 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -96,4 +100,226 @@ public class WebTest {
         }
         Assertions.assertEquals(step, new HashSet<>(list).size());
     }
+
+    @Test
+    void getHttpSegmentsSuccess() throws Exception {
+        int step = 2500;
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextSegments")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .queryParam("step", String.valueOf(step))
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        log.debug("response:{}", response);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode jsonNode = objectMapper.readTree(response);
+        Assertions.assertEquals("0", jsonNode.get("code").asText());
+        JsonNode data = jsonNode.get("data");
+        Assertions.assertTrue(data.isArray(), "data is not an array");
+        long count = 0;
+        for (JsonNode segment : data) {
+            count += segment.get("end").asLong() - segment.get("start").asLong() + 1;
+        }
+        Assertions.assertEquals(step, count);
+    }
+
+    @Test
+    void getHttpSegmentsTooLarge() throws Exception {
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextSegments")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .queryParam("step", "100000000")
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        ObjectMapper objectMapper = new ObjectMapper();
+        Assertions.assertNotEquals("0", objectMapper.readTree(response).get("code").asText());
+    }
+
+    @Test
+    void getHttpTextSuccess() throws Exception {
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValue")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .accept(MediaType.TEXT_PLAIN)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        Assertions.assertTrue(Long.parseLong(response) > 0, "response is not a positive number: " + response);
+    }
+
+    @Test
+    void acceptQualityTest() throws Exception {
+        // q 值高的 text/plain 优先, 不取决于在 Accept 中的位置
+        String text =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValue")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .header("Accept", "application/json;q=0.5, text/plain")
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        Assertions.assertTrue(Long.parseLong(text) > 0, "response is not a positive number: " + text);
+        String json =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValue")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .header("Accept", "application/octet-stream;q=0.1, application/json")
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        Assertions.assertEquals("0", new ObjectMapper().readTree(json).get("code").asText());
+    }
+
+    @Test
+    void getHttpBinarySuccess() throws Exception {
+        byte[] first =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValue")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .accept(MediaType.APPLICATION_OCTET_STREAM)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsByteArray();
+        Assertions.assertEquals(8, first.length);
+        long value = ByteBuffer.wrap(first).getLong();
+        Assertions.assertTrue(value > 0);
+
+        int step = 300;
+        byte[] list =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValueList")
+                                        .queryParam(sequenceName, sequenceNameValue)
+                                        .queryParam("step", String.valueOf(step))
+                                        .accept(MediaType.APPLICATION_OCTET_STREAM)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(list);
+        Assertions.assertEquals(step, readVarint(buffer));
+        Set<Long> values = new HashSet<>();
+        long previous = 0;
+        for (int i = 0; i < step; i++) {
+            long zigzag = readVarint(buffer);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            Assertions.assertTrue(previous > value);
+            values.add(previous);
+        }
+        Assertions.assertFalse(buffer.hasRemaining());
+        Assertions.assertEquals(step, values.size());
+        // 连续的值每个差值只占 1 字节
+        Assertions.assertTrue(list.length < 2 + 10 + step * 2, "length = " + list.length);
+    }
+
+    @Test
+    void getHttpBinaryFails() throws Exception {
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValue")
+                                        .queryParam(sequenceName, "")
+                                        .accept(MediaType.APPLICATION_OCTET_STREAM)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString(StandardCharsets.UTF_8);
+        Assertions.assertEquals("序列名为空", response);
+    }
+
+    @Test
+    void getHttpBinaryNotFound() throws Exception {
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValueList")
+                                        .queryParam(sequenceName, "tddl_missing_seq")
+                                        .queryParam("step", "10")
+                                        .accept(MediaType.APPLICATION_OCTET_STREAM)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isNotFound())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString(StandardCharsets.UTF_8);
+        Assertions.assertTrue(response.startsWith("Sequence does not exist"), response);
+    }
+
+    @Test
+    void getHttpBatchSuccess() throws Exception {
+        String body = "[{\"sequenceName\":\"tddl_test_seq\",\"count\":1}," +
+                "{\"sequenceName\":\"tddl_test_seq1\",\"count\":1}," +
+                "{\"sequenceName\":\"tddl_test_seq\",\"count\":5}]";
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValueBatch")
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .content(body)
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        log.debug("response:{}", response);
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode jsonNode = objectMapper.readTree(response);
+        Assertions.assertEquals("0", jsonNode.get("code").asText());
+        JsonNode data = jsonNode.get("data");
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertEquals("tddl_test_seq", data.get(0).get("sequenceName").asText());
+        Assertions.assertEquals("tddl_test_seq1", data.get(1).get("sequenceName").asText());
+        Assertions.assertEquals(1, data.get(0).get("values").size());
+        Assertions.assertEquals(1, data.get(1).get("values").size());
+        Assertions.assertEquals(5, data.get(2).get("values").size());
+        // 同一序列只取一次, 按请求顺序分配
+        long previous = data.get(0).get("values").get(0).asLong();
+        for (JsonNode value : data.get(2).get("values")) {
+            Assertions.assertTrue(value.asLong() > previous);
+            previous = value.asLong();
+        }
+    }
+
+    @Test
+    void getHttpBatchFails() throws Exception {
+        String response =
+                mockMvc.perform(
+                                MockMvcRequestBuilders.post("/rest-inner-api/v1/nextValueBatch")
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .content("[{\"sequenceName\":\"tddl_test_seq\",\"count\":0}]")
+                        )
+                        .andExpect(MockMvcResultMatchers.status().isOk())
+                        .andReturn()
+                        .getResponse()
+                        .getContentAsString();
+        ObjectMapper objectMapper = new ObjectMapper();
+        Assertions.assertNotEquals("0", objectMapper.readTree(response).get("code").asText());
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
 }
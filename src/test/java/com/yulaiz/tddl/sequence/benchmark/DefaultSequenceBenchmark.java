@@ -0,0 +1,91 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.MemorySequenceDao;
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.SequenceOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DefaultSequence 取值的开销, 使用内存中的 SequenceDao 模拟数据库延迟
+ * <p>
+ * step 越小区间切换越频繁, step = 1 时每次取值都要切换区间, 用于衡量切换本身的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DefaultSequenceBenchmark {
+    /**
+     * 每次获取区间的模拟延迟, 单位: 微秒
+     */
+    @Param({"0", "500"})
+    private long latencyMicros;
+
+    @Param({"1", "1000", "100000"})
+    private int step;
+
+    /**
+     * 是否开启区间预取
+     */
+    @Param({"false", "true"})
+    private boolean buffer;
+
+    private DefaultSequence sequence;
+
+    private ExecutorService refillExecutor;
+
+    @Setup
+    public void setup() {
+        SequenceOptions options = new SequenceOptions();
+        if (buffer) {
+            refillExecutor = Executors.newFixedThreadPool(4);
+            options.setRefillExecutor(refillExecutor);
+            options.setPrefetchWatermark(0.2);
+        }
+        sequence = new DefaultSequence(new MemorySequenceDao(step, latencyMicros), "benchmark_seq", options);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (refillExecutor != null) {
+            refillExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextValue1() throws SequenceException {
+        return sequence.nextValue();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long nextValue8() throws SequenceException {
+        return sequence.nextValue();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long nextValue64() throws SequenceException {
+        return sequence.nextValue();
+    }
+}
@@ -0,0 +1,65 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.FileSequenceDao;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内存映射文件序列获取区间的耗时, 每次都要刷盘, 多线程时并发的写入合并为一次刷盘
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileSequenceBenchmark {
+    private static final int SEQUENCE_COUNT = 100;
+
+    private Path path;
+
+    private FileSequenceDao sequenceDao;
+
+    @Setup
+    public void setup() throws IOException {
+        path = Files.createTempFile("sequence-benchmark", ".dat");
+        Files.delete(path);
+        sequenceDao = new FileSequenceDao(path, 1024, true, 1000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sequenceDao.destroy();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SequenceRange nextRange1() throws SequenceException {
+        return sequenceDao.nextRange("benchmark_seq");
+    }
+
+    @Benchmark
+    @Threads(8)
+    public SequenceRange nextRange8() throws SequenceException {
+        return sequenceDao.nextRange("benchmark_seq_" + ThreadLocalRandom.current().nextInt(SEQUENCE_COUNT));
+    }
+}
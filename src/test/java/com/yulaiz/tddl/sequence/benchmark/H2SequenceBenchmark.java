@@ -0,0 +1,120 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.SequenceMetrics;
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 使用内嵌 H2 数据库的 DefaultSequenceDao, 衡量获取区间和完整取值路径的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class H2SequenceBenchmark {
+    private static final String SEQUENCE_NAME = "benchmark_seq";
+
+    @Param({"cas", "atomic"})
+    private String allocationMode;
+
+    @Param({"1000"})
+    private int step;
+
+    /**
+     * 获取区间专用的连接数, 0 为从连接池借用
+     */
+    @Param({"0", "2"})
+    private int refillConnections;
+
+    private HikariDataSource dataSource;
+
+    private DefaultSequenceDao sequenceDao;
+
+    private DefaultSequence sequence;
+
+    @Setup
+    public void setup() throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:benchmark;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(64);
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists sequence");
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            statement.execute("insert into sequence values ('" + SEQUENCE_NAME + "', 0, now(), " + step + ")");
+        }
+        sequenceDao = new DefaultSequenceDao(dataSource, SequenceMetrics.NOOP);
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_TABLE_NAME", "sequence");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_NAME_COLUMN_NAME", "name");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_STEP_COLUMN_STEP", "step");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_VALUE_COLUMN_NAME", "value");
+        ReflectionTestUtils.setField(sequenceDao, "DEFAULT_GMT_MODIFIED_COLUMN_NAME", "gmt_modified");
+        ReflectionTestUtils.setField(sequenceDao, "allocationMode", allocationMode);
+        ReflectionTestUtils.setField(sequenceDao, "refillConnectionCount", refillConnections);
+        ReflectionTestUtils.setField(sequenceDao, "refillConnectionTimeoutMillis", 3000L);
+        sequenceDao.init();
+        sequence = new DefaultSequence(sequenceDao, SEQUENCE_NAME);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sequenceDao.destroy();
+        dataSource.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SequenceRange nextRange1() throws SequenceException {
+        return sequenceDao.nextRange(SEQUENCE_NAME);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public SequenceRange nextRange8() throws SequenceException {
+        return sequenceDao.nextRange(SEQUENCE_NAME);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextValue1() throws SequenceException {
+        return sequence.nextValue();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long nextValue8() throws SequenceException {
+        return sequence.nextValue();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long nextValue64() throws SequenceException {
+        return sequence.nextValue();
+    }
+}
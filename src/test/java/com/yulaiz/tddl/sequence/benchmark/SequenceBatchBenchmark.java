@@ -0,0 +1,54 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.MemorySequenceDao;
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量取值的开销, 对比装箱的 nextValueList 和写入数组的 nextValues
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBatchBenchmark {
+    @Param({"1", "16", "256", "4096"})
+    private int batchSize;
+
+    private DefaultSequence sequence;
+
+    private long[] values;
+
+    @Setup
+    public void setup() {
+        sequence = new DefaultSequence(new MemorySequenceDao(100000), "benchmark_batch_seq");
+        values = new long[batchSize];
+    }
+
+    @Benchmark
+    public List<Long> nextValueList() throws SequenceException {
+        return sequence.nextValueList(batchSize);
+    }
+
+    @Benchmark
+    public long[] nextValues() throws SequenceException {
+        sequence.nextValues(values, 0, batchSize);
+        return values;
+    }
+}
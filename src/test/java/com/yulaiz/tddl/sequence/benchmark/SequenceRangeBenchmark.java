@@ -0,0 +1,58 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.vo.SequenceRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 区间内取值的开销, 不涉及区间切换
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceRangeBenchmark {
+    private SequenceRange range;
+
+    @Setup
+    public void setup() {
+        range = new SequenceRange(1, Long.MAX_VALUE - 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long getAndIncrement1() {
+        return range.getAndIncrement();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long getAndIncrement8() {
+        return range.getAndIncrement();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long getAndIncrement64() {
+        return range.getAndIncrement();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long getAndAdd100() {
+        return range.getAndAdd(100);
+    }
+}
@@ -0,0 +1,65 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.MemorySequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.SequenceRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 按序列名查找 DefaultSequence 的开销, 即 SequenceImpl.getDefaultSequence 的实现
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceRegistryBenchmark {
+    @Param({"10", "10000", "100000"})
+    private int sequenceCount;
+
+    private SequenceRegistry registry;
+
+    private String[] sequenceNames;
+
+    private Function<String, DefaultSequence> factory;
+
+    @Setup
+    public void setup() {
+        MemorySequenceDao sequenceDao = new MemorySequenceDao(1000);
+        factory = name -> new DefaultSequence(sequenceDao, name);
+        registry = new SequenceRegistry(sequenceCount, TimeUnit.HOURS.toMillis(1));
+        sequenceNames = new String[sequenceCount];
+        for (int i = 0; i < sequenceCount; i++) {
+            sequenceNames[i] = "benchmark_seq_" + i;
+            registry.get(sequenceNames[i], factory);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public DefaultSequence lookup1() {
+        return registry.get(sequenceNames[ThreadLocalRandom.current().nextInt(sequenceCount)], factory);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public DefaultSequence lookup8() {
+        return registry.get(sequenceNames[ThreadLocalRandom.current().nextInt(sequenceCount)], factory);
+    }
+}
@@ -0,0 +1,63 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.MemorySequenceDao;
+import com.yulaiz.tddl.sequence.exception.SequenceException;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import com.yulaiz.tddl.sequence.service.impl.SequenceOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点序列分段前后的对比, stripes = 0 为不分段, 所有线程在同一个区间计数上竞争
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StripedSequenceBenchmark {
+    @Param({"0", "64"})
+    private int stripes;
+
+    @Param({"64", "1024"})
+    private int stripeSize;
+
+    private DefaultSequence sequence;
+
+    @Setup
+    public void setup() {
+        SequenceOptions options = new SequenceOptions().withStripes(stripes, stripeSize);
+        sequence = new DefaultSequence(new MemorySequenceDao(1_000_000), "benchmark_striped_seq", options);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long nextValue1() throws SequenceException {
+        return sequence.nextValue();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long nextValue8() throws SequenceException {
+        return sequence.nextValue();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long nextValue32() throws SequenceException {
+        return sequence.nextValue();
+    }
+}
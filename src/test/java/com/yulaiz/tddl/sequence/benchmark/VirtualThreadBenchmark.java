@@ -0,0 +1,99 @@
+package com.yulaiz.tddl.sequence.benchmark;
+
+import com.yulaiz.tddl.sequence.MemorySequenceDao;
+import com.yulaiz.tddl.sequence.service.impl.DefaultSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 平台线程池和虚拟线程处理请求的对比
+ * <p>
+ * 每次操作并发提交 concurrency 个请求, 每个请求从随机序列取值。步长很小且获取区间有延迟,
+ * 请求经常阻塞在补充区间上。platform 模拟 Tomcat 默认的 200 个线程, virtual 每个请求一个虚拟线程。
+ * 试验结束时打印 JVM 的平台线程峰值
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    private static final int SEQUENCE_COUNT = 1000;
+
+    @Param({"platform", "virtual"})
+    private String executorType;
+
+    @Param({"200", "2000"})
+    private int concurrency;
+
+    /**
+     * 每次获取区间的模拟延迟, 单位: 微秒
+     */
+    @Param({"1000"})
+    private long latencyMicros;
+
+    private ExecutorService executor;
+
+    private DefaultSequence[] sequences;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = "virtual".equals(executorType)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(200);
+        MemorySequenceDao sequenceDao = new MemorySequenceDao(10, latencyMicros);
+        sequences = new DefaultSequence[SEQUENCE_COUNT];
+        for (int i = 0; i < SEQUENCE_COUNT; i++) {
+            sequences[i] = new DefaultSequence(sequenceDao, "benchmark_seq_" + i);
+        }
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        System.out.println("executor = " + executorType + ", concurrency = " + concurrency
+                + ", peak platform threads = " + threadMXBean.getPeakThreadCount());
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一次操作为 concurrency 个请求全部完成
+     */
+    @Benchmark
+    public void requests() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(() -> {
+                try {
+                    sequences[ThreadLocalRandom.current().nextInt(SEQUENCE_COUNT)].nextValue();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+    }
+}
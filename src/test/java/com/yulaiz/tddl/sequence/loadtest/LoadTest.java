@@ -0,0 +1,301 @@
+package com.yulaiz.tddl.sequence.loadtest;
+
+import com.yulaiz.tddl.sequence.TddlSequenceApplication;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * REST 接口的端到端压测, 用于容量评估和发现性能回退
+ * <p>
+ * 在本进程内用内嵌 H2 启动服务, 以固定到达率 (open-loop) 请求 /nextValue 和 /nextValueList, 请求不等待前一个完成,
+ * 延迟从计划发出的时刻算起, 服务变慢时排队时间计入延迟, 不会因为压测端降速而被掩盖。
+ * 序列名按 Zipf 分布选择, skew 为 0 时均匀分布, 越大越集中在少数热点序列上。
+ * 结束时打印吞吐量, 各接口的延迟分位数, 错误率, 以及数据库取区间次数
+ * <p>
+ * 参数为 key=value, 以 -- 开头的参数原样传给 Spring, 用于调整服务配置:
+ * <pre>
+ * mvn -P loadtest test -Dloadtest.args="rate=5000 sequences=1000 skew=1.2 --sequence.buffer.enabled=true"
+ * </pre>
+ */
+public class LoadTest {
+    private static final String URL = "jdbc:h2:mem:loadtest;MODE=MySQL;NON_KEYWORDS=VALUE;DB_CLOSE_DELAY=-1";
+    private static final String SEQUENCE_PREFIX = "loadtest_seq_";
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * 每秒发出的请求数
+     */
+    private final int rate;
+    /**
+     * 预热和测量的时长, 单位: 秒
+     */
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    /**
+     * 序列个数和 Zipf 分布的指数
+     */
+    private final int sequences;
+    private final double skew;
+    /**
+     * /nextValueList 请求的比例和每次取的个数
+     */
+    private final double listRatio;
+    private final int listSize;
+    /**
+     * 数据库中的步长
+     */
+    private final int step;
+    /**
+     * 同时未完成的请求上限, 超出时丢弃请求并计入 dropped, 避免服务过载时压测端无限堆积
+     */
+    private final int maxInFlight;
+
+    private final double[] cumulative;
+
+    private final Endpoint valueEndpoint = new Endpoint("nextValue");
+    private final Endpoint listEndpoint = new Endpoint("nextValueList");
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * 只统计计划在该时刻之后发出的请求, 预热期间的请求即使在测量期间完成也不计入
+     */
+    private volatile long measureFrom = Long.MAX_VALUE;
+
+    private HttpClient httpClient;
+    private String baseUrl;
+
+    LoadTest(Map<String, String> options) {
+        rate = Integer.parseInt(options.getOrDefault("rate", "1000"));
+        warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "15"));
+        durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        sequences = Integer.parseInt(options.getOrDefault("sequences", "100"));
+        skew = Double.parseDouble(options.getOrDefault("skew", "1.0"));
+        listRatio = Double.parseDouble(options.getOrDefault("list-ratio", "0.1"));
+        listSize = Integer.parseInt(options.getOrDefault("list-size", "10"));
+        step = Integer.parseInt(options.getOrDefault("step", "1000"));
+        maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "2000"));
+        cumulative = zipf(sequences, skew);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> springArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.profiles.active=",
+                "--spring.datasource.url=" + URL,
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.sql.init.mode=never",
+                "--spring.threads.virtual.enabled=true",
+                "--sequence.log.sample-rate=0",
+                "--logging.level.root=WARN"));
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                springArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else if (!arg.isBlank()) {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        LoadTest loadTest = new LoadTest(options);
+        loadTest.createTable();
+        try (ConfigurableApplicationContext context =
+                     SpringApplication.run(TddlSequenceApplication.class, springArgs.toArray(new String[0]))) {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            String contextPath = context.getEnvironment().getProperty("server.servlet.context-path", "");
+            loadTest.run("http://localhost:" + port + contextPath + "/rest-inner-api/v1",
+                    context.getBean(MeterRegistry.class));
+        }
+    }
+
+    private void createTable() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("create table sequence (name varchar(255) primary key, value bigint, " +
+                    "gmt_modified timestamp, step int)");
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "insert into sequence values (?, 0, now(), ?)")) {
+                for (int i = 0; i < sequences; i++) {
+                    stmt.setString(1, SEQUENCE_PREFIX + i);
+                    stmt.setInt(2, step);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    private void run(String baseUrl, MeterRegistry meterRegistry) throws InterruptedException {
+        this.baseUrl = baseUrl;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient httpClient = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(Duration.ofSeconds(5))
+                     .build()) {
+            this.httpClient = httpClient;
+            System.out.printf("rate = %d/s, sequences = %d, skew = %.2f, list-ratio = %.2f, list-size = %d, " +
+                            "step = %d, warmup = %ds, duration = %ds%n",
+                    rate, sequences, skew, listRatio, listSize, step, warmupSeconds, durationSeconds);
+            generate(executor, warmupSeconds);
+            double refills = refillCount(meterRegistry);
+            double retries = retryCount(meterRegistry);
+            measureFrom = System.nanoTime();
+            generate(executor, durationSeconds);
+            double elapsedSeconds = (System.nanoTime() - measureFrom) / 1e9;
+            // 等待已发出的请求完成后再统计
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            report(elapsedSeconds, refillCount(meterRegistry) - refills, retryCount(meterRegistry) - retries);
+        }
+    }
+
+    /**
+     * 按固定间隔发出请求, 每个请求在独立的虚拟线程中执行
+     */
+    private void generate(ExecutorService executor, int seconds) {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            if (!inFlight.tryAcquire()) {
+                if (intendedStart >= measureFrom) {
+                    dropped.increment();
+                }
+                continue;
+            }
+            executor.execute(() -> {
+                try {
+                    request(intendedStart);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+    }
+
+    private void request(long intendedStart) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String sequenceName = SEQUENCE_PREFIX + nextSequence(random.nextDouble());
+        boolean list = random.nextDouble() < listRatio;
+        Endpoint endpoint = list ? listEndpoint : valueEndpoint;
+        String query = "sequenceName=" + sequenceName + (list ? "&step=" + listSize : "");
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/" + endpoint.path + "?" + query))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        boolean success;
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            success = response.statusCode() == 200 && response.body().contains("\"code\":\"0\"");
+        } catch (Exception e) {
+            success = false;
+        }
+        if (intendedStart >= measureFrom) {
+            endpoint.recorder.recordValue(Math.min(System.nanoTime() - intendedStart, MAX_LATENCY_NANOS));
+            (success ? endpoint.completed : endpoint.errors).increment();
+        }
+    }
+
+    private int nextSequence(double p) {
+        int index = Arrays.binarySearch(cumulative, p);
+        index = index >= 0 ? index : -index - 1;
+        return Math.min(index, sequences - 1);
+    }
+
+    /**
+     * Zipf 分布的累积概率, 第 k 个序列的权重为 1 / (k + 1)^skew
+     */
+    static double[] zipf(int n, double skew) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static double refillCount(MeterRegistry meterRegistry) {
+        return meterRegistry.find("sequence.refill").timers().stream().mapToDouble(Timer::count).sum();
+    }
+
+    private static double retryCount(MeterRegistry meterRegistry) {
+        return meterRegistry.find("sequence.retries").counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private void report(double elapsedSeconds, double refills, double retries) {
+        long requests = 0;
+        long errors = 0;
+        long values = 0;
+        for (Endpoint endpoint : List.of(valueEndpoint, listEndpoint)) {
+            Histogram histogram = endpoint.recorder.getIntervalHistogram();
+            long completed = endpoint.completed.sum();
+            long failed = endpoint.errors.sum();
+            requests += completed + failed;
+            errors += failed;
+            values += completed * (endpoint == listEndpoint ? listSize : 1);
+            System.out.printf("%-14s requests = %d, errors = %d, latency(us) p50 = %.1f, p90 = %.1f, p99 = %.1f, " +
+                            "p99.9 = %.1f, p99.99 = %.1f, max = %.1f%n",
+                    endpoint.path, completed + failed, failed,
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(90) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getValueAtPercentile(99.99) / 1e3, histogram.getMaxValue() / 1e3);
+        }
+        long droppedCount = dropped.sum();
+        System.out.printf("throughput = %.1f req/s (offered %d req/s), values = %.1f/s, error rate = %.4f%%, " +
+                        "dropped = %d%n",
+                requests / elapsedSeconds, rate, values / elapsedSeconds,
+                requests == 0 ? 0 : 100.0 * errors / requests, droppedCount);
+        System.out.printf("db refills = %.0f (%.2f/s, %.2f per 10k values), cas retries = %.0f%n",
+                refills, refills / elapsedSeconds, values == 0 ? 0 : refills * 10000 / values, retries);
+    }
+
+    private static class Endpoint {
+        private final String path;
+        private final Recorder recorder = new Recorder(MAX_LATENCY_NANOS, 3);
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private Endpoint(String path) {
+            this.path = path;
+        }
+    }
+}
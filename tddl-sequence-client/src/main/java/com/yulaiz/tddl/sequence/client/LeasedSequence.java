@@ -0,0 +1,151 @@
+package com.yulaiz.tddl.sequence.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个序列在客户端本地的租约
+ * <p>
+ * 当前段内取值只有一次 CAS, 当前段用完时加锁切换到下一段, 优先使用预取的租约
+ */
+class LeasedSequence {
+    /**
+     * 客户端只依赖 jackson, 日志使用 JDK 自带的 System.Logger
+     */
+    private static final System.Logger LOGGER = System.getLogger(LeasedSequence.class.getName());
+
+    @FunctionalInterface
+    interface Leaser {
+        List<long[]> lease(String sequenceName, int size) throws SequenceClientException;
+    }
+
+    private final String sequenceName;
+    private final int leaseSize;
+    private final long prefetchThreshold;
+    private final Executor executor;
+    private final Leaser leaser;
+
+    private volatile Segment current;
+    /**
+     * 当前租约中尚未使用的后续段
+     */
+    private final Deque<Segment> pending = new ArrayDeque<>();
+    private CompletableFuture<List<long[]>> prefetching;
+    private final Lock lock = new ReentrantLock();
+
+    LeasedSequence(String sequenceName, int leaseSize, double prefetchRatio, Executor executor, Leaser leaser) {
+        this.sequenceName = sequenceName;
+        this.leaseSize = leaseSize;
+        this.prefetchThreshold = (long) (leaseSize * prefetchRatio);
+        this.executor = executor;
+        this.leaser = leaser;
+    }
+
+    long nextValue() throws SequenceClientException {
+        for (; ; ) {
+            Segment segment = current;
+            if (segment != null) {
+                long value = segment.next.getAndIncrement();
+                if (value <= segment.end) {
+                    if (value == segment.prefetchAt) {
+                        prefetch();
+                    }
+                    return value;
+                }
+            }
+            switchSegment(segment);
+        }
+    }
+
+    private void switchSegment(Segment expected) throws SequenceClientException {
+        lock.lock();
+        try {
+            if (current != expected) {
+                return;
+            }
+            if (pending.isEmpty()) {
+                addSegments(takeLease());
+            }
+            current = pending.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取得下一个租约, 优先使用预取的结果, 预取失败时同步租用
+     */
+    private List<long[]> takeLease() throws SequenceClientException {
+        CompletableFuture<List<long[]>> future = prefetching;
+        prefetching = null;
+        if (future != null) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                LOGGER.log(System.Logger.Level.WARNING,
+                        "Prefetch sequence lease failed, sequenceName = " + sequenceName + ", fallback to lease directly",
+                        e.getCause());
+            }
+        }
+        return leaser.lease(sequenceName, leaseSize);
+    }
+
+    private void prefetch() {
+        lock.lock();
+        try {
+            if (prefetching != null) {
+                return;
+            }
+            CompletableFuture<List<long[]>> future = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    future.complete(leaser.lease(sequenceName, leaseSize));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            prefetching = future;
+        } catch (RejectedExecutionException e) {
+            // 客户端已关闭, 切换时同步租用
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 租约中的最后一段在剩余 prefetchThreshold 个值时触发预取, 每个租约只触发一次
+     */
+    private void addSegments(List<long[]> segments) {
+        for (int i = 0; i < segments.size(); i++) {
+            long start = segments.get(i)[0];
+            long end = segments.get(i)[1];
+            long prefetchAt = prefetchThreshold > 0 && i == segments.size() - 1
+                    ? Math.max(start, end - prefetchThreshold)
+                    : Long.MIN_VALUE;
+            pending.add(new Segment(start, end, prefetchAt));
+        }
+    }
+
+    private static class Segment {
+        private final AtomicLong next;
+        private final long end;
+        /**
+         * 取到该值时触发预取
+         */
+        private final long prefetchAt;
+
+        private Segment(long start, long end, long prefetchAt) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.yulaiz.tddl.sequence.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 序列客户端
+ * <p>
+ * 每次通过 /rest-inner-api/v1/nextSegments 租用 leaseSize 个连续的值, 在本地发号,
+ * 剩余量低于 prefetchRatio 时异步租用下一段, 每 leaseSize 个值只需要一次 HTTP 请求。
+ * 客户端退出时未用完的值直接丢弃
+ * <pre>
+ * SequenceClient client = SequenceClient.builder("http://localhost:8080/tddl-sequence").leaseSize(2000).build();
+ * long value = client.nextValue("tddl_test_seq");
+ * </pre>
+ */
+public class SequenceClient implements AutoCloseable {
+    private static final String LEASE_PATH = "/rest-inner-api/v1/nextSegments";
+    private static final String SUCCESS = "0";
+
+    private final URI leaseUri;
+    private final int leaseSize;
+    private final double prefetchRatio;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+    private final ExecutorService prefetchExecutor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, LeasedSequence> sequences = new ConcurrentHashMap<>();
+
+    private SequenceClient(Builder builder) {
+        this.leaseUri = URI.create(builder.baseUrl.replaceAll("/+$", "") + LEASE_PATH);
+        this.leaseSize = builder.leaseSize;
+        this.prefetchRatio = builder.prefetchRatio;
+        this.timeout = builder.timeout;
+        this.prefetchExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "sequence-client-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(builder.timeout)
+                .executor(prefetchExecutor)
+                .build();
+    }
+
+    public static Builder builder(String baseUrl) {
+        return new Builder(baseUrl);
+    }
+
+    /**
+     * 取得序列下一个值
+     *
+     * @param sequenceName 序列名称
+     * @return 返回序列下一个值
+     * @throws SequenceClientException 租用失败
+     */
+    public long nextValue(String sequenceName) throws SequenceClientException {
+        return getSequence(sequenceName).nextValue();
+    }
+
+    /**
+     * 取得序列下一组值
+     *
+     * @param sequenceName 序列名称
+     * @param size         一共获取多少个值
+     * @return 返回序列下一组值
+     * @throws SequenceClientException 租用失败
+     */
+    public List<Long> nextValueList(String sequenceName, int size) throws SequenceClientException {
+        LeasedSequence sequence = getSequence(sequenceName);
+        List<Long> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(sequence.nextValue());
+        }
+        return list;
+    }
+
+    @Override
+    public void close() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private LeasedSequence getSequence(String sequenceName) {
+        Objects.requireNonNull(sequenceName, "sequenceName");
+        return sequences.computeIfAbsent(sequenceName,
+                name -> new LeasedSequence(name, leaseSize, prefetchRatio, prefetchExecutor, this::lease));
+    }
+
+    /**
+     * 向服务端租用 size 个值
+     *
+     * @return 连续区间 [start, end] 列表
+     */
+    List<long[]> lease(String sequenceName, int size) throws SequenceClientException {
+        String form = "sequenceName=" + URLEncoder.encode(sequenceName, StandardCharsets.UTF_8) + "&step=" + size;
+        HttpRequest request = HttpRequest.newBuilder(leaseUri)
+                .timeout(timeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new SequenceClientException("Failed to lease sequence " + sequenceName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SequenceClientException("Interrupted while leasing sequence " + sequenceName, e);
+        }
+        if (response.statusCode() != 200) {
+            throw new SequenceClientException("Failed to lease sequence " + sequenceName
+                    + ", status = " + response.statusCode());
+        }
+        JsonNode result;
+        try {
+            result = objectMapper.readTree(response.body());
+        } catch (IOException e) {
+            throw new SequenceClientException("Invalid lease response of sequence " + sequenceName, e);
+        }
+        if (!SUCCESS.equals(result.path("code").asText())) {
+            throw new SequenceClientException("Failed to lease sequence " + sequenceName
+                    + ", message = " + result.path("message").asText());
+        }
+        List<long[]> segments = new ArrayList<>(2);
+        for (JsonNode segment : result.path("data")) {
+            segments.add(new long[]{segment.get("start").asLong(), segment.get("end").asLong()});
+        }
+        if (segments.isEmpty()) {
+            throw new SequenceClientException("Empty lease response of sequence " + sequenceName);
+        }
+        return segments;
+    }
+
+    public static class Builder {
+        private final String baseUrl;
+        private int leaseSize = 1000;
+        private double prefetchRatio = 0.2;
+        private Duration timeout = Duration.ofSeconds(3);
+
+        private Builder(String baseUrl) {
+            this.baseUrl = Objects.requireNonNull(baseUrl, "baseUrl");
+        }
+
+        /**
+         * 每次租用的值个数, 不能超过服务端 sequence.lease.max-size
+         */
+        public Builder leaseSize(int leaseSize) {
+            if (leaseSize <= 0) {
+                throw new IllegalArgumentException("leaseSize must be greater than zero");
+            }
+            this.leaseSize = leaseSize;
+            return this;
+        }
+
+        /**
+         * 剩余比例低于该值时异步租用下一段, 为 0 时不预取
+         */
+        public Builder prefetchRatio(double prefetchRatio) {
+            if (prefetchRatio < 0 || prefetchRatio >= 1) {
+                throw new IllegalArgumentException("prefetchRatio must be in [0, 1)");
+            }
+            this.prefetchRatio = prefetchRatio;
+            return this;
+        }
+
+        /**
+         * 连接和请求超时时间
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = Objects.requireNonNull(timeout, "timeout");
+            return this;
+        }
+
+        public SequenceClient build() {
+            return new SequenceClient(this);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.yulaiz.tddl.sequence.client;
+
+/**
+ * 租用序列失败
+ */
+public class SequenceClientException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public SequenceClientException(String message) {
+        super(message);
+    }
+
+    public SequenceClientException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,134 @@
+package com.yulaiz.tddl.sequence.client;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class SequenceClientTest {
+    private static final String sequenceName = "tddl_test_seq";
+
+    private HttpServer server;
+    private final AtomicInteger leaseCount = new AtomicInteger();
+    private final AtomicLong nextValue = new AtomicLong(1);
+    private volatile boolean splitLease;
+    private volatile boolean failing;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tddl-sequence/rest-inner-api/v1/nextSegments", exchange -> {
+            Map<String, String> form = new HashMap<>();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            for (String pair : body.split("&")) {
+                String[] kv = pair.split("=", 2);
+                form.put(kv[0], URLDecoder.decode(kv[1], StandardCharsets.UTF_8));
+            }
+            String response;
+            if (failing) {
+                response = "{\"code\":\"-1\",\"message\":\"Sequence does not exist\"}";
+            } else {
+                leaseCount.incrementAndGet();
+                int step = Integer.parseInt(form.get("step"));
+                long start = nextValue.getAndAdd(step + 100);
+                // 模拟跨越服务端区间时返回两段
+                response = splitLease
+                        ? "{\"code\":\"0\",\"data\":[{\"start\":" + start + ",\"end\":" + (start + 9) + "},"
+                        + "{\"start\":" + (start + 110) + ",\"end\":" + (start + step + 99) + "}]}"
+                        : "{\"code\":\"0\",\"data\":[{\"start\":" + start + ",\"end\":" + (start + step - 1) + "}]}";
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private SequenceClient newClient(int leaseSize) {
+        return SequenceClient.builder("http://127.0.0.1:" + server.getAddress().getPort() + "/tddl-sequence/")
+                .leaseSize(leaseSize)
+                .build();
+    }
+
+    @Test
+    void oneRequestPerLeaseTest() throws Exception {
+        try (SequenceClient client = newClient(1000)) {
+            long last = 0;
+            for (int i = 0; i < 5000; i++) {
+                long value = client.nextValue(sequenceName);
+                Assertions.assertTrue(value > last);
+                last = value;
+            }
+            // 5 个租约加上最后一次预取
+            Assertions.assertTrue(leaseCount.get() <= 6, "leaseCount = " + leaseCount.get());
+        }
+    }
+
+    @Test
+    void splitLeaseConcurrentTest() throws Exception {
+        splitLease = true;
+        int threads = 8;
+        int perThread = 2000;
+        Set<Long> values = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (SequenceClient client = newClient(500)) {
+            CountDownLatch latch = new CountDownLatch(threads);
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            values.add(client.nextValue(sequenceName));
+                        }
+                    } catch (SequenceClientException e) {
+                        Assertions.fail(e);
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(threads * perThread, values.size());
+        Assertions.assertTrue(leaseCount.get() <= threads * perThread / 500 + 2, "leaseCount = " + leaseCount.get());
+    }
+
+    @Test
+    void failedLeaseTest() {
+        failing = true;
+        try (SequenceClient client = newClient(100)) {
+            SequenceClientException e = Assertions.assertThrows(SequenceClientException.class,
+                    () -> client.nextValue(sequenceName));
+            Assertions.assertTrue(e.getMessage().contains("Sequence does not exist"));
+            failing = false;
+            List<Long> list = Assertions.assertDoesNotThrow(() -> client.nextValueList(sequenceName, 150));
+            Assertions.assertEquals(150, Set.copyOf(list).size());
+        }
+    }
+}